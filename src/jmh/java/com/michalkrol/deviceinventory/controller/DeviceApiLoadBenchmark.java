@@ -0,0 +1,99 @@
+package com.michalkrol.deviceinventory.controller;
+
+import com.michalkrol.deviceinventory.DeviceinventoryApplication;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.repository.DeviceRepository;
+import com.michalkrol.deviceinventory.service.DeviceService;
+import com.michalkrol.deviceinventory.utils.TopologyGenerator;
+import com.michalkrol.deviceinventory.utils.TopologyGenerator.Shape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The whole application on a random port, with the benchmark threads as HTTP clients. There are more clients
+// than Tomcat's 200 worker threads, throughput comes from -bm thrpt and p99 latency from the default sample mode.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(256)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DeviceApiLoadBenchmark {
+
+    private static final int SIZE = 10_000;
+
+    @Param({"false", "true"})
+    private boolean virtualThreads;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private String baseUri;
+    private final AtomicInteger nextDevice = new AtomicInteger(SIZE);
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplication(DeviceinventoryApplication.class).run(
+                "--server.port=0",
+                "--spring.threads.virtual.enabled=" + virtualThreads,
+                "--spring.datasource.url=jdbc:h2:mem:load",
+                "--logging.level.root=WARN");
+        context.getBean(DeviceRepository.class).saveAll(new TopologyGenerator(Shape.RANDOM_FOREST, SIZE).toDevices());
+        context.getBean(DeviceService.class).loadTopology();
+        baseUri = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/device";
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        httpClient.close();
+        context.close();
+    }
+
+    @Benchmark
+    public int getDevice() throws IOException, InterruptedException {
+        String macAddress = MacAddress.toString(TopologyGenerator.macAddressOf(ThreadLocalRandom.current().nextInt(SIZE)));
+        return send(HttpRequest.newBuilder(URI.create(baseUri + "/" + macAddress)).GET().build());
+    }
+
+    // every request registers a new switch below the first gateway, which is a blocking JPA insert
+    @Benchmark
+    public int createDevice() throws IOException, InterruptedException {
+        String body = "{\"deviceType\":\"SWITCH\",\"macAddress\":\""
+                + MacAddress.toString(TopologyGenerator.macAddressOf(nextDevice.getAndIncrement()))
+                + "\",\"uplinkMacAddress\":\"" + MacAddress.toString(TopologyGenerator.macAddressOf(0)) + "\"}";
+        return send(HttpRequest.newBuilder(URI.create(baseUri))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build());
+    }
+
+    private int send(HttpRequest request) throws IOException, InterruptedException {
+        int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status != 200) {
+            throw new IllegalStateException("Unexpected status " + status + " for " + request.uri());
+        }
+        return status;
+    }
+}
@@ -0,0 +1,94 @@
+package com.michalkrol.deviceinventory.service;
+
+import com.michalkrol.deviceinventory.DeviceinventoryApplication;
+import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceEntry;
+import com.michalkrol.deviceinventory.model.DevicePage;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.repository.DeviceRepository;
+import com.michalkrol.deviceinventory.utils.TopologyGenerator;
+import com.michalkrol.deviceinventory.utils.TopologyGenerator.Shape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// runs the service with its real H2 database, repositories and topology index, without the web layer
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DeviceServiceBenchmark {
+
+    @Param({"RANDOM_FOREST"})
+    private Shape shape;
+
+    @Param({"10000", "100000"})
+    private int size;
+
+    private ConfigurableApplicationContext context;
+    private DeviceService deviceService;
+    private SplittableRandom random;
+    private int nextDevice;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplication(DeviceinventoryApplication.class).run(
+                "--spring.main.web-application-type=none",
+                "--spring.datasource.url=jdbc:h2:mem:benchmark",
+                "--logging.level.root=WARN");
+        deviceService = context.getBean(DeviceService.class);
+        // gateways cannot be registered through the service, the inventory is seeded like DeviceDataLoader does
+        context.getBean(DeviceRepository.class).saveAll(new TopologyGenerator(shape, size).toDevices());
+        deviceService.loadTopology();
+        random = new SplittableRandom(42);
+        nextDevice = size;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Device findByMacAddress() {
+        return deviceService.findByMacAddress(new MacAddress(TopologyGenerator.macAddressOf(random.nextInt(size))));
+    }
+
+    @Benchmark
+    public List<DeviceEntry> findAllSorted() {
+        return deviceService.findAllSorted();
+    }
+
+    @Benchmark
+    public DevicePage findSortedPage() {
+        return deviceService.findSortedPage(null, null, 100);
+    }
+
+    // every invocation registers a new switch below the first gateway, so the inventory keeps growing
+    @Benchmark
+    public Device save() {
+        Device device = new Device();
+        device.setDeviceType(DeviceType.SWITCH);
+        device.setMacAddress(MacAddress.toString(TopologyGenerator.macAddressOf(nextDevice++)));
+        device.setUplinkMacAddress(MacAddress.toString(TopologyGenerator.macAddressOf(0)));
+        return deviceService.save(device);
+    }
+}
@@ -0,0 +1,55 @@
+package com.michalkrol.deviceinventory.utils;
+
+import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.utils.TopologyGenerator.Shape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DeviceSortingBenchmark {
+
+    @Param({"RANDOM_FOREST"})
+    private Shape shape;
+
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    private List<Device> generatedDevices;
+    private List<Device> devices;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        generatedDevices = new TopologyGenerator(shape, size).toDevices();
+    }
+
+    // sorting is in place, every invocation starts from the generated order
+    @Setup(Level.Invocation)
+    public void copy() {
+        devices = new ArrayList<>(generatedDevices);
+    }
+
+    @Benchmark
+    public List<Device> sortDevices() {
+        DeviceSortingUtils.sortDevices(devices);
+        return devices;
+    }
+}
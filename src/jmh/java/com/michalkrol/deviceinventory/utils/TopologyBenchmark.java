@@ -0,0 +1,127 @@
+package com.michalkrol.deviceinventory.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteConstraints;
+import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceNode;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.utils.TopologyGenerator.Shape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 10M devices need a larger heap, e.g. -Djmh.args="TopologyBenchmark -p size=10000000 -jvmArgs -Xmx8g"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TopologyBenchmark {
+
+    private static final TopologyCheckpoint.Fingerprint CHECKPOINT_FINGERPRINT =
+            new TopologyCheckpoint.Fingerprint(0, 0);
+
+    @Param({"WIDE_GATEWAYS", "DEEP_CHAINS", "RANDOM_FOREST"})
+    private Shape shape;
+
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    @Param("1000")
+    private int fanOut;
+
+    private List<Device> devices;
+    private DeviceTopologyIndex topologyIndex;
+    private MacAddress subTopologyRoot;
+    private JsonFactory jsonFactory;
+    private Path checkpointPath;
+
+    @Setup
+    public void setUp() throws IOException {
+        TopologyGenerator generator = new TopologyGenerator(shape, size, fanOut, 42);
+        devices = generator.toDevices();
+        topologyIndex = generator.toIndex();
+        subTopologyRoot = new MacAddress(TopologyGenerator.macAddressOf(0));
+        jsonFactory = JsonFactory.builder()
+                .streamWriteConstraints(StreamWriteConstraints.builder().maxNestingDepth(Integer.MAX_VALUE).build())
+                .build();
+        checkpointPath = Files.createTempFile("topology", ".checkpoint");
+        TopologyCheckpoint.write(checkpointPath, topologyIndex.view(), CHECKPOINT_FINGERPRINT);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(checkpointPath);
+    }
+
+    @Benchmark
+    public DeviceTopologyIndex buildIndex() {
+        return DeviceTopologyIndex.of(devices);
+    }
+
+    // the cold start alternative to buildIndex(), without the database round trips in front of either
+    @Benchmark
+    public DeviceTopologyIndex restoreCheckpoint() throws IOException {
+        DeviceTopologyIndex restoredIndex = new DeviceTopologyIndex();
+        TopologyCheckpoint.restore(checkpointPath, CHECKPOINT_FINGERPRINT, restoredIndex);
+        return restoredIndex;
+    }
+
+    @Benchmark
+    public DeviceTopologyIndex validateNoCycles() {
+        TopologyUtils.validateNoCycles(topologyIndex);
+        return topologyIndex;
+    }
+
+    @Benchmark
+    public List<DeviceNode> prepareDeviceTopology() {
+        return TopologyUtils.prepareDeviceTopology(topologyIndex);
+    }
+
+    @Benchmark
+    public DeviceNode prepareSubDeviceTopology() {
+        return TopologyUtils.prepareSubDeviceTopology(subTopologyRoot, topologyIndex);
+    }
+
+    @Benchmark
+    public long writeDeviceTopology() throws IOException {
+        CountingOutputStream outputStream = new CountingOutputStream();
+        try (JsonGenerator generator = jsonFactory.createGenerator(outputStream)) {
+            TopologyUtils.writeDeviceTopology(generator, topologyIndex);
+        }
+        return outputStream.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.michalkrol.deviceinventory.utils;
+
+import static com.michalkrol.deviceinventory.model.DeviceType.ACCESS_POINT;
+import static com.michalkrol.deviceinventory.model.DeviceType.GATEWAY;
+import static com.michalkrol.deviceinventory.model.DeviceType.SWITCH;
+
+import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.MacAddress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic topologies for benchmarks. Devices are generated uplinks first, so every
+ * prefix is a valid inventory, and MAC addresses are scattered over the lower 24 bits of a fixed OUI
+ * instead of being sequential.
+ */
+public class TopologyGenerator {
+
+    public enum Shape {
+        // a few gateways, each with fanOut devices directly below it
+        WIDE_GATEWAYS,
+        // gateways heading switch chains of fanOut devices, ending with an access point
+        DEEP_CHAINS,
+        // every fanOut-th device is a gateway, the rest link to a random earlier switch or gateway
+        RANDOM_FOREST
+    }
+
+    @FunctionalInterface
+    public interface DeviceSink {
+        void accept(long macAddress, DeviceType deviceType, long uplinkMacAddress);
+    }
+
+    private static final long OUI = 0x00_1A_2BL << 24;
+    private static final long MAC_ADDRESS_MULTIPLIER = 0x9E3779B1L;
+    private static final int MAX_SIZE = 1 << 24;
+
+    private final Shape shape;
+    private final int size;
+    private final int fanOut;
+    private final long seed;
+
+    public TopologyGenerator(Shape shape, int size, int fanOut, long seed) {
+        if (size < 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Size must be between 0 and " + MAX_SIZE + ".");
+        }
+        if (fanOut < 1) {
+            throw new IllegalArgumentException("Fan out must be positive.");
+        }
+        this.shape = shape;
+        this.size = size;
+        this.fanOut = fanOut;
+        this.seed = seed;
+    }
+
+    public TopologyGenerator(Shape shape, int size) {
+        this(shape, size, 1000, 42);
+    }
+
+    // an odd multiplier is a bijection modulo 2^24, so MAC addresses never collide
+    public static long macAddressOf(int device) {
+        return OUI | (device * MAC_ADDRESS_MULTIPLIER) & 0xFF_FFFFL;
+    }
+
+    public void generate(DeviceSink sink) {
+        switch (shape) {
+            case WIDE_GATEWAYS -> generateWideGateways(sink);
+            case DEEP_CHAINS -> generateDeepChains(sink);
+            case RANDOM_FOREST -> generateRandomForest(sink);
+        }
+    }
+
+    public List<Device> toDevices() {
+        List<Device> devices = new ArrayList<>(size);
+        generate((macAddress, deviceType, uplinkMacAddress) -> {
+            Device device = new Device();
+            device.setDeviceType(deviceType);
+            device.setMacAddress(MacAddress.toString(macAddress));
+            if (uplinkMacAddress != MacAddress.NONE) {
+                device.setUplinkMacAddress(MacAddress.toString(uplinkMacAddress));
+            }
+            devices.add(device);
+        });
+        return devices;
+    }
+
+    public DeviceTopologyIndex toIndex() {
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        generate(topologyIndex::add);
+        return topologyIndex;
+    }
+
+    private void generateWideGateways(DeviceSink sink) {
+        int gatewayCount = Math.max(1, (size + fanOut) / (fanOut + 1));
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int device = 0; device < size; device++) {
+            if (device < gatewayCount) {
+                sink.accept(macAddressOf(device), GATEWAY, MacAddress.NONE);
+            } else {
+                sink.accept(macAddressOf(device), random.nextInt(4) == 0 ? SWITCH : ACCESS_POINT,
+                        macAddressOf(device % gatewayCount));
+            }
+        }
+    }
+
+    private void generateDeepChains(DeviceSink sink) {
+        for (int device = 0; device < size; device++) {
+            int position = device % fanOut;
+            if (position == 0) {
+                sink.accept(macAddressOf(device), GATEWAY, MacAddress.NONE);
+            } else {
+                boolean last = position == fanOut - 1 || device == size - 1;
+                sink.accept(macAddressOf(device), last ? ACCESS_POINT : SWITCH, macAddressOf(device - 1));
+            }
+        }
+    }
+
+    private void generateRandomForest(DeviceSink sink) {
+        SplittableRandom random = new SplittableRandom(seed);
+        // access points cannot be uplinks, only switches and gateways are candidates
+        int[] uplinkCandidates = new int[size];
+        int uplinkCandidateCount = 0;
+        for (int device = 0; device < size; device++) {
+            if (device % fanOut == 0) {
+                sink.accept(macAddressOf(device), GATEWAY, MacAddress.NONE);
+                uplinkCandidates[uplinkCandidateCount++] = device;
+                continue;
+            }
+            int uplink = uplinkCandidates[random.nextInt(uplinkCandidateCount)];
+            if (random.nextInt(10) < 7) {
+                sink.accept(macAddressOf(device), SWITCH, macAddressOf(uplink));
+                uplinkCandidates[uplinkCandidateCount++] = device;
+            } else {
+                sink.accept(macAddressOf(device), ACCESS_POINT, macAddressOf(uplink));
+            }
+        }
+    }
+}
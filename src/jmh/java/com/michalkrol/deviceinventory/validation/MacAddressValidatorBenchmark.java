@@ -0,0 +1,61 @@
+package com.michalkrol.deviceinventory.validation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MacAddressValidatorBenchmark {
+
+    private static final int MAC_ADDRESS_COUNT = 1024;
+
+    private final String[] macAddresses = new String[MAC_ADDRESS_COUNT];
+    private final String[] dottedMacAddresses = new String[MAC_ADDRESS_COUNT];
+    private int position;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < MAC_ADDRESS_COUNT; i++) {
+            String hex = String.format("%012X", random.nextLong(1L << 48));
+            macAddresses[i] = hex.replaceAll("(..)(?!$)", "$1:");
+            dottedMacAddresses[i] = (hex.substring(0, 4) + "." + hex.substring(4, 8) + "." + hex.substring(8)).toLowerCase();
+        }
+    }
+
+    private int next() {
+        position = (position + 1) & (MAC_ADDRESS_COUNT - 1);
+        return position;
+    }
+
+    // the String.matches based implementation this parser replaced
+    @Benchmark
+    public boolean regexMatches() {
+        return macAddresses[next()].matches("^([0-9A-F]{2}:){5}[0-9A-F]{2}$");
+    }
+
+    @Benchmark
+    public long parseStrict() {
+        return MacAddressValidator.parseMacAddress(macAddresses[next()]);
+    }
+
+    @Benchmark
+    public long parseLenientDotted() {
+        return MacAddressValidator.parseMacAddress(dottedMacAddresses[next()], true);
+    }
+}
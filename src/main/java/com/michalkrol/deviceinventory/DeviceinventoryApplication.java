@@ -4,9 +4,11 @@ import com.michalkrol.deviceinventory.config.DeviceProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableConfigurationProperties(DeviceProperties.class)
+@EnableScheduling
 public class DeviceinventoryApplication {
 
 	public static void main(String[] args) {
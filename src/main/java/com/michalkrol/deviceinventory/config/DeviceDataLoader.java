@@ -2,10 +2,14 @@ package com.michalkrol.deviceinventory.config;
 
 import com.michalkrol.deviceinventory.model.Device;
 import com.michalkrol.deviceinventory.repository.DeviceRepository;
+import com.michalkrol.deviceinventory.service.DeviceImportService;
+import com.michalkrol.deviceinventory.service.DeviceService;
+import com.michalkrol.deviceinventory.service.TopologyCheckpointService;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.stereotype.Component;
 
+import java.nio.file.Path;
 import java.util.List;
 
 @Component
@@ -13,29 +17,51 @@ public class DeviceDataLoader implements ApplicationRunner {
 
     private final DeviceProperties deviceProperties;
     private final DeviceRepository deviceRepository;
+    private final DeviceService deviceService;
+    private final DeviceImportService deviceImportService;
+    private final TopologyCheckpointService topologyCheckpointService;
 
-    public DeviceDataLoader(DeviceProperties deviceProperties, DeviceRepository deviceRepository) {
+    public DeviceDataLoader(DeviceProperties deviceProperties, DeviceRepository deviceRepository,
+                            DeviceService deviceService, DeviceImportService deviceImportService,
+                            TopologyCheckpointService topologyCheckpointService) {
         this.deviceProperties = deviceProperties;
         this.deviceRepository = deviceRepository;
+        this.deviceService = deviceService;
+        this.deviceImportService = deviceImportService;
+        this.topologyCheckpointService = topologyCheckpointService;
     }
 
     @Override
     public void run(ApplicationArguments args) {
         if (deviceRepository.count() == 0) {
-            List<Device> devices = deviceProperties.getInitial().stream()
-                    .map(cfg -> {
-                        Device d = new Device();
-                        d.setDeviceType(cfg.getDeviceType());
-                        d.setMacAddress(cfg.getMacAddress());
-                        d.setUplinkMacAddress(cfg.getUplinkMacAddress());
-                        return d;
-                    })
-                    .toList();
-
-            deviceRepository.saveAll(devices);
+            List<Device> devices = readSeed();
+            if (!devices.isEmpty()) {
+                // the seed becomes the topology index directly, there is nothing else to load
+                deviceService.seed(devices);
+                deviceService.prepareAggregates();
+                System.out.println(">>> Start Devices uploaded: " + devices.size());
+                return;
+            }
+        }
+        if (!topologyCheckpointService.restore()) {
+            deviceService.loadTopology();
+        }
+        deviceService.prepareAggregates();
+    }
 
-            System.out.println(">>> Start Devices uploaded: " + devices.size());
+    private List<Device> readSeed() {
+        String seedFile = deviceProperties.getSeedFile();
+        if (seedFile != null && !seedFile.isBlank()) {
+            return deviceImportService.readDevices(Path.of(seedFile));
         }
+        return deviceProperties.getInitial().stream()
+                .map(cfg -> {
+                    Device d = new Device();
+                    d.setDeviceType(cfg.getDeviceType());
+                    d.setMacAddress(cfg.getMacAddress());
+                    d.setUplinkMacAddress(cfg.getUplinkMacAddress());
+                    return d;
+                })
+                .toList();
     }
 }
-
@@ -0,0 +1,114 @@
+package com.michalkrol.deviceinventory.config;
+
+import com.michalkrol.deviceinventory.exception.DeviceInventoryException.Rule;
+import com.michalkrol.deviceinventory.utils.DeviceTopologyIndex;
+import com.michalkrol.deviceinventory.utils.TopologyUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Meters of the hot paths, all registered up front so recording is a lookup free counter update.
+// Request latencies per endpoint come from Spring's http.server.requests timer.
+@Component
+public class DeviceMetrics {
+
+    public enum Query {
+        FIND_ALL, FIND_SORTED, FIND_SUBTREE
+    }
+
+    private final Timer cycleCheckTimer;
+    private final Timer topologyTimer;
+    private final Timer topologySnapshotTimer;
+    private final Timer sortTimer;
+    private final Map<Query, DistributionSummary> rowsLoaded = new EnumMap<>(Query.class);
+    private final Map<Rule, Counter> rejections = new EnumMap<>(Rule.class);
+    private volatile int lastDepth;
+
+    public DeviceMetrics(MeterRegistry meterRegistry, DeviceTopologyIndex topologyIndex) {
+        cycleCheckTimer = Timer.builder("device.topology.cycle.check")
+                .description("Time spent checking that a registration does not close a cycle")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        topologyTimer = Timer.builder("device.topology.prepare")
+                .description("Time spent building the device topology")
+                .tag("format", "tree")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        topologySnapshotTimer = Timer.builder("device.topology.prepare")
+                .description("Time spent building the device topology")
+                .tag("format", "snapshot")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        sortTimer = Timer.builder("device.sort")
+                .description("Time spent listing all devices in sorted order")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        for (Query query : Query.values()) {
+            rowsLoaded.put(query, DistributionSummary.builder("device.rows.loaded")
+                    .description("Device rows loaded from the database per query")
+                    .baseUnit("rows")
+                    .tag("query", toTagValue(query))
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+        for (Rule rule : Rule.values()) {
+            rejections.put(rule, Counter.builder("device.validation.rejections")
+                    .description("Requests rejected by a validation rule")
+                    .tag("rule", toTagValue(rule))
+                    .register(meterRegistry));
+        }
+        Gauge.builder("device.inventory.size", topologyIndex, DeviceTopologyIndex::size)
+                .description("Registered devices")
+                .baseUnit("devices")
+                .register(meterRegistry);
+        Gauge.builder("device.inventory.depth", topologyIndex, this::lastKnownDepth)
+                .description("Levels of links below the highest root, as of the last aggregates update")
+                .register(meterRegistry);
+    }
+
+    // the previous value is kept while the aggregates wait for a recompute
+    private int lastKnownDepth(DeviceTopologyIndex topologyIndex) {
+        int depth = TopologyUtils.measureDepth(topologyIndex);
+        if (depth >= 0) {
+            lastDepth = depth;
+        }
+        return lastDepth;
+    }
+
+    public void recordCycleCheck(Runnable check) {
+        cycleCheckTimer.record(check);
+    }
+
+    public <T> T recordTopology(Supplier<T> preparation) {
+        return topologyTimer.record(preparation);
+    }
+
+    public <T> T recordTopologySnapshot(Supplier<T> serialization) {
+        return topologySnapshotTimer.record(serialization);
+    }
+
+    public <T> T recordSort(Supplier<T> listing) {
+        return sortTimer.record(listing);
+    }
+
+    public <T extends List<?>> T recordRowsLoaded(Query query, T rows) {
+        rowsLoaded.get(query).record(rows.size());
+        return rows;
+    }
+
+    public void recordRejection(Rule rule) {
+        rejections.get(rule).increment();
+    }
+
+    private static String toTagValue(Enum<?> value) {
+        return value.name().toLowerCase();
+    }
+}
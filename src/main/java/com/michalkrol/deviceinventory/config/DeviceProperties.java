@@ -4,6 +4,7 @@ import com.michalkrol.deviceinventory.model.DeviceType;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,6 +14,19 @@ public class DeviceProperties {
 
     private List<DeviceConfig> initial = new ArrayList<>();
 
+    // CSV or NDJSON file in the import format, replaces the initial devices when set
+    private String seedFile;
+
+    private boolean lenientMacAddresses;
+
+    private ImportConfig imports = new ImportConfig();
+
+    private CheckpointConfig checkpoint = new CheckpointConfig();
+
+    private EventsConfig events = new EventsConfig();
+
+    private ChangesConfig changes = new ChangesConfig();
+
     public List<DeviceConfig> getInitial() {
         return initial;
     }
@@ -21,6 +35,54 @@ public class DeviceProperties {
         this.initial = initial;
     }
 
+    public String getSeedFile() {
+        return seedFile;
+    }
+
+    public void setSeedFile(String seedFile) {
+        this.seedFile = seedFile;
+    }
+
+    public boolean isLenientMacAddresses() {
+        return lenientMacAddresses;
+    }
+
+    public void setLenientMacAddresses(boolean lenientMacAddresses) {
+        this.lenientMacAddresses = lenientMacAddresses;
+    }
+
+    public ImportConfig getImports() {
+        return imports;
+    }
+
+    public void setImports(ImportConfig imports) {
+        this.imports = imports;
+    }
+
+    public CheckpointConfig getCheckpoint() {
+        return checkpoint;
+    }
+
+    public void setCheckpoint(CheckpointConfig checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    public EventsConfig getEvents() {
+        return events;
+    }
+
+    public void setEvents(EventsConfig events) {
+        this.events = events;
+    }
+
+    public ChangesConfig getChanges() {
+        return changes;
+    }
+
+    public void setChanges(ChangesConfig changes) {
+        this.changes = changes;
+    }
+
     public static class DeviceConfig {
 
         private DeviceType deviceType;
@@ -51,5 +113,86 @@ public class DeviceProperties {
             this.uplinkMacAddress = uplinkMacAddress;
         }
     }
-}
 
+    public static class ImportConfig {
+
+        private int chunkSize = 1000;
+        private int maxReportedErrors = 1000;
+        private String directory;
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        public int getMaxReportedErrors() {
+            return maxReportedErrors;
+        }
+
+        public void setMaxReportedErrors(int maxReportedErrors) {
+            this.maxReportedErrors = maxReportedErrors;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+    }
+
+    public static class CheckpointConfig {
+
+        // no checkpoint is written or read without a path
+        private String path;
+        private Duration interval = Duration.ofMinutes(5);
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+    }
+
+    public static class EventsConfig {
+
+        // latest topology events kept for subscribers resuming their stream
+        private int bufferSize = 65536;
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public void setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+    }
+
+    public static class ChangesConfig {
+
+        // changes kept for /changes, older positions have to resync
+        private int retention = 1_000_000;
+
+        public int getRetention() {
+            return retention;
+        }
+
+        public void setRetention(int retention) {
+            this.retention = retention;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.michalkrol.deviceinventory.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.StreamWriteConstraints;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+@Configuration
+public class TopologyJsonConfig {
+
+    // a topology is as deep as its longest uplink chain, far beyond Jackson's default nesting limit
+    private static final StreamWriteConstraints TOPOLOGY_WRITE_CONSTRAINTS = StreamWriteConstraints.builder()
+            .maxNestingDepth(Integer.MAX_VALUE)
+            .build();
+
+    @Bean
+    @Primary
+    public JsonFactory topologyJsonFactory(ObjectMapper objectMapper) {
+        return objectMapper.getFactory().rebuild()
+                .streamWriteConstraints(TOPOLOGY_WRITE_CONSTRAINTS)
+                .build();
+    }
+
+    // binary encodings of the same topology documents, negotiated through the Accept header
+    @Bean
+    public CBORFactory topologyCborFactory() {
+        return CBORFactory.builder()
+                .streamWriteConstraints(TOPOLOGY_WRITE_CONSTRAINTS)
+                .build();
+    }
+
+    @Bean
+    public SmileFactory topologySmileFactory() {
+        return SmileFactory.builder()
+                .streamWriteConstraints(TOPOLOGY_WRITE_CONSTRAINTS)
+                .build();
+    }
+}
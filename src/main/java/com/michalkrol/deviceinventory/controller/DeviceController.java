@@ -1,29 +1,95 @@
 package com.michalkrol.deviceinventory.controller;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.michalkrol.deviceinventory.config.DeviceProperties;
+import com.michalkrol.deviceinventory.exception.DeviceInventoryException;
+import com.michalkrol.deviceinventory.model.BulkRegistrationResult;
+import com.michalkrol.deviceinventory.model.CommonUplink;
 import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceChanges;
 import com.michalkrol.deviceinventory.model.DeviceEntry;
 import com.michalkrol.deviceinventory.model.DeviceNode;
+import com.michalkrol.deviceinventory.model.DevicePage;
+import com.michalkrol.deviceinventory.model.ImpactReport;
+import com.michalkrol.deviceinventory.model.ImportReport;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.model.SubtreeAggregates;
+import com.michalkrol.deviceinventory.service.DeviceChangeService;
+import com.michalkrol.deviceinventory.service.DeviceImportService;
+import com.michalkrol.deviceinventory.service.DeviceImportService.ImportFormat;
 import com.michalkrol.deviceinventory.service.DeviceService;
+import com.michalkrol.deviceinventory.service.TopologyEventService;
+import com.michalkrol.deviceinventory.service.TopologySnapshotService;
+import com.michalkrol.deviceinventory.service.TopologySnapshotService.TopologySnapshot;
+import com.michalkrol.deviceinventory.utils.PackedTopology;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/device")
 public class DeviceController {
 
+    private static final String TEXT_CSV_VALUE = "text/csv";
+    private static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+    private static final int STREAM_PAGE_SIZE = 1000;
+
     private final DeviceService deviceService;
+    private final DeviceImportService deviceImportService;
+    private final DeviceProperties deviceProperties;
+    private final ObjectMapper objectMapper;
+    private final JsonFactory topologyJsonFactory;
+    private final CBORFactory topologyCborFactory;
+    private final SmileFactory topologySmileFactory;
+    private final TopologySnapshotService topologySnapshotService;
+    private final TopologyEventService topologyEventService;
+    private final DeviceChangeService deviceChangeService;
 
-    public DeviceController(DeviceService deviceService) {
+    public DeviceController(DeviceService deviceService, DeviceImportService deviceImportService,
+                            DeviceProperties deviceProperties, ObjectMapper objectMapper,
+                            JsonFactory topologyJsonFactory, CBORFactory topologyCborFactory,
+                            SmileFactory topologySmileFactory, TopologySnapshotService topologySnapshotService,
+                            TopologyEventService topologyEventService, DeviceChangeService deviceChangeService) {
         this.deviceService = deviceService;
+        this.deviceImportService = deviceImportService;
+        this.deviceProperties = deviceProperties;
+        this.objectMapper = objectMapper;
+        this.topologyJsonFactory = topologyJsonFactory;
+        this.topologyCborFactory = topologyCborFactory;
+        this.topologySmileFactory = topologySmileFactory;
+        this.topologySnapshotService = topologySnapshotService;
+        this.topologyEventService = topologyEventService;
+        this.deviceChangeService = deviceChangeService;
     }
 
     @GetMapping("/{macAddress}")
@@ -32,15 +98,50 @@ public class DeviceController {
             @ApiResponse(responseCode = "400", description = "Validation Error", content = @Content)
     })
     public DeviceEntry getDevice(@PathVariable String macAddress) {
-        Device device = deviceService.findByMacAddress(macAddress);
+        Device device = deviceService.findByMacAddress(toMacAddress(macAddress));
         return toDeviceEntry(device);
     }
 
     @GetMapping("/getAllDevicesSorted")
     public List<DeviceEntry> getSortedDevices() {
-        return deviceService.findAllSorted().stream()
-                .map(DeviceController::toDeviceEntry)
-                .toList();
+        return deviceService.findAllSorted();
+    }
+
+    @GetMapping("/getDevicesSortedPage")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "OK"),
+            @ApiResponse(responseCode = "400", description = "Validation Error", content = @Content)
+    })
+    public DevicePage getSortedDevicesPage(@RequestParam(required = false) String cursor,
+                                           @RequestParam(required = false) Integer offset,
+                                           @RequestParam(defaultValue = "100") int size) {
+        return deviceService.findSortedPage(cursor, offset, size);
+    }
+
+    @GetMapping(value = "/getAllDevicesSorted/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamSortedDevices() {
+        StreamingResponseBody body = outputStream -> {
+            try (SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(outputStream)) {
+                deviceService.forEachSorted(STREAM_PAGE_SIZE, devices -> {
+                    try {
+                        for (DeviceEntry device : devices) {
+                            writer.write(device);
+                        }
+                        writer.flush();
+                    } catch (IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                });
+                outputStream.write('\n');
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    private MacAddress toMacAddress(String macAddress) {
+        return MacAddress.parse(macAddress, deviceProperties.isLenientMacAddresses());
     }
 
     private static DeviceEntry toDeviceEntry(Device device) {
@@ -50,18 +151,277 @@ public class DeviceController {
                 .build();
     }
 
-    @GetMapping("/getTopology")
-    public List<DeviceNode> getTopology() {
-        return deviceService.getTopology();
+    @GetMapping(value = "/getTopology", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE,
+            APPLICATION_SMILE_VALUE, PackedTopology.MEDIA_TYPE_VALUE})
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "OK",
+                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = DeviceNode.class)))),
+            @ApiResponse(responseCode = "400", description = "Validation Error", content = @Content)
+    })
+    public ResponseEntity<StreamingResponseBody> getTopology(
+            @Parameter(description = "Levels of linked Devices below the roots")
+            @RequestParam(required = false) Integer maxDepth,
+            @Parameter(description = "Maximum number of roots, and of linked Devices per Device")
+            @RequestParam(required = false) Integer childLimit,
+            @Parameter(description = "MAC address of the last root of the previous page")
+            @RequestParam(required = false) String cursor,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            WebRequest request) {
+        TopologyFormat format = negotiateTopologyFormat(accept);
+        boolean unlimited = maxDepth == null && childLimit == null && cursor == null;
+        // only the JSON snapshot is served compressed
+        boolean gzip = unlimited && format == TopologyFormat.JSON
+                && acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        // sets the ETag header as well, it is taken before the body is built, so at worst a client
+        // refetches content it already has
+        if (request.checkNotModified(currentETag(format, gzip))) {
+            return notModified();
+        }
+        if (unlimited) {
+            return switch (format) {
+                case JSON -> sendSnapshot(topologySnapshotService.getTopologySnapshot(), gzip);
+                case PACKED -> streamPacked(deviceService::writePackedDeviceTopology);
+                default -> streamTopology(format, deviceService::writeDeviceTopology);
+            };
+        }
+        checkNotPacked(format);
+        List<DeviceNode> roots = deviceService.getTopology(maxDepth, childLimit,
+                cursor == null ? null : toMacAddress(cursor));
+        return streamTopology(format, generator -> objectMapper.writeValue(generator, roots));
+    }
+
+    @GetMapping(value = "/getSubDeviceTopology/{rootDeviceMacAddress}", produces = {MediaType.APPLICATION_JSON_VALUE,
+            MediaType.APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE, PackedTopology.MEDIA_TYPE_VALUE})
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "OK",
+                    content = @Content(schema = @Schema(implementation = DeviceNode.class))),
+            @ApiResponse(responseCode = "400", description = "Validation Error", content = @Content)
+    })
+    public ResponseEntity<StreamingResponseBody> getSubDeviceTopology(
+            @PathVariable String rootDeviceMacAddress,
+            @Parameter(description = "Levels of linked Devices below the root")
+            @RequestParam(required = false) Integer maxDepth,
+            @Parameter(description = "Maximum number of linked Devices per Device")
+            @RequestParam(required = false) Integer childLimit,
+            @Parameter(description = "MAC address of the last linked Device of the root on the previous page")
+            @RequestParam(required = false) String cursor,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            WebRequest request) {
+        MacAddress rootMacAddress = toMacAddress(rootDeviceMacAddress);
+        TopologyFormat format = negotiateTopologyFormat(accept);
+        // fail before the ETag is compared and before the response is committed, streaming cannot turn into
+        // a 400 anymore
+        deviceService.checkDeviceExists(rootMacAddress);
+        if (request.checkNotModified(currentETag(format, false))) {
+            return notModified();
+        }
+        if (maxDepth == null && childLimit == null && cursor == null) {
+            if (format == TopologyFormat.PACKED) {
+                return streamPacked(outputStream -> deviceService.writePackedSubDeviceTopology(rootMacAddress,
+                        outputStream));
+            }
+            return streamTopology(format, generator -> deviceService.writeSubDeviceTopology(rootMacAddress, generator));
+        }
+        checkNotPacked(format);
+        DeviceNode root = deviceService.getSubDeviceTopology(rootMacAddress, maxDepth, childLimit,
+                cursor == null ? null : toMacAddress(cursor));
+        return streamTopology(format, generator -> objectMapper.writeValue(generator, root));
     }
 
-    @GetMapping("/getSubDeviceTopology/{rootDeviceMacAddress}")
+    // the Device itself first, its root last
+    @GetMapping("/getUplinkPath/{macAddress}")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "OK"),
             @ApiResponse(responseCode = "400", description = "Validation Error", content = @Content)
     })
-    public DeviceNode getSubDeviceTopology(@PathVariable String rootDeviceMacAddress) {
-        return deviceService.getSubDeviceTopology(rootDeviceMacAddress);
+    public List<DeviceEntry> getUplinkPath(@PathVariable String macAddress) {
+        return deviceService.getUplinkPath(toMacAddress(macAddress));
+    }
+
+    @GetMapping("/getCommonUplink/{firstMacAddress}/{secondMacAddress}")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "OK"),
+            @ApiResponse(responseCode = "400", description = "Validation Error", content = @Content)
+    })
+    public CommonUplink getCommonUplink(@PathVariable String firstMacAddress, @PathVariable String secondMacAddress) {
+        return deviceService.getCommonUplink(toMacAddress(firstMacAddress), toMacAddress(secondMacAddress));
+    }
+
+    @GetMapping("/isBehind/{macAddress}/{uplinkMacAddress}")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "OK"),
+            @ApiResponse(responseCode = "400", description = "Validation Error", content = @Content)
+    })
+    public boolean isBehind(@PathVariable String macAddress, @PathVariable String uplinkMacAddress) {
+        return deviceService.isBehind(toMacAddress(macAddress), toMacAddress(uplinkMacAddress));
+    }
+
+    @GetMapping("/getImpact/{macAddress}")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "OK"),
+            @ApiResponse(responseCode = "400", description = "Validation Error", content = @Content)
+    })
+    public ImpactReport getImpact(@PathVariable String macAddress,
+                                  @Parameter(description = "Maximum number of affected Devices to list")
+                                  @RequestParam(defaultValue = "100") int limit) {
+        return deviceService.getImpactReport(toMacAddress(macAddress), limit);
+    }
+
+    @GetMapping("/getSubtreeAggregates/{macAddress}")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "OK"),
+            @ApiResponse(responseCode = "400", description = "Validation Error", content = @Content)
+    })
+    public SubtreeAggregates getSubtreeAggregates(@PathVariable String macAddress) {
+        return deviceService.getSubtreeAggregates(toMacAddress(macAddress));
+    }
+
+    @GetMapping("/getLargestSubtrees")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "OK"),
+            @ApiResponse(responseCode = "400", description = "Validation Error", content = @Content)
+    })
+    public List<SubtreeAggregates> getLargestSubtrees(
+            @Parameter(description = "Number of Devices with the most Devices below them")
+            @RequestParam(defaultValue = "10") int limit) {
+        return deviceService.getLargestSubtrees(limit);
+    }
+
+    // device-added events carry their sequence as event id, browsers resume with it on reconnect
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "device-added events, or a resync event"
+                    + " with the current sequence when the requested one is no longer available")
+    })
+    public SseEmitter streamTopologyEvents(
+            @Parameter(description = "Sequence of the last received event, the current one when absent")
+            @RequestParam(required = false) Long since,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return topologyEventService.subscribe(lastEventId != null ? lastEventId : since);
+    }
+
+    @GetMapping("/changes")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "OK"),
+            @ApiResponse(responseCode = "400", description = "Validation Error", content = @Content)
+    })
+    public DeviceChanges getChanges(
+            @Parameter(description = "Sequence of the last change already applied")
+            @RequestParam long since,
+            @Parameter(description = "Maximum number of changes")
+            @RequestParam(defaultValue = "1000") int limit) {
+        return deviceChangeService.getChanges(since, limit);
+    }
+
+    // the same document in JSON, CBOR or Smile, written by the generator of the negotiated format
+    private ResponseEntity<StreamingResponseBody> streamTopology(TopologyFormat format, JsonBodyWriter bodyWriter) {
+        JsonFactory factory = switch (format) {
+            case CBOR -> topologyCborFactory;
+            case SMILE -> topologySmileFactory;
+            default -> topologyJsonFactory;
+        };
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = factory.createGenerator(outputStream)) {
+                bodyWriter.write(generator);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(format.mediaType)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                .body(body);
+    }
+
+    private static ResponseEntity<StreamingResponseBody> streamPacked(StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .contentType(TopologyFormat.PACKED.mediaType)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                .body(body);
+    }
+
+    // a copy in one format or encoding must never revalidate a request for another
+    private String currentETag(TopologyFormat format, boolean gzip) {
+        return topologySnapshotService.getCurrentETag(gzip ? format.representation + "-gzip" : format.representation);
+    }
+
+    // checkNotModified has set the status and the ETag, caches need to know what the ETag depends on
+    private static ResponseEntity<StreamingResponseBody> notModified() {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                .build();
+    }
+
+    // the packed format has no room for descendant counts and left out linked Devices
+    private static void checkNotPacked(TopologyFormat format) {
+        if (format == TopologyFormat.PACKED) {
+            throw new DeviceInventoryException("The packed topology format cannot be combined with maxDepth,"
+                    + " childLimit or cursor.");
+        }
+    }
+
+    // the most preferred accepted format, the produces condition has already answered 406 when there is none
+    private static TopologyFormat negotiateTopologyFormat(String accept) {
+        if (accept == null) {
+            return TopologyFormat.JSON;
+        }
+        List<MediaType> acceptedTypes = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        MimeTypeUtils.sortBySpecificity(acceptedTypes);
+        for (MediaType acceptedType : acceptedTypes) {
+            if (acceptedType.getQualityValue() == 0) {
+                continue;
+            }
+            for (TopologyFormat format : TopologyFormat.values()) {
+                if (acceptedType.includes(format.mediaType)) {
+                    return format;
+                }
+            }
+        }
+        return TopologyFormat.JSON;
+    }
+
+    private static ResponseEntity<StreamingResponseBody> sendSnapshot(TopologySnapshot snapshot, boolean gzip) {
+        byte[] json = gzip ? snapshot.getGzippedJson() : snapshot.getJson();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .contentLength(json.length)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(outputStream -> outputStream.write(json));
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String encoding : acceptEncoding.split(",")) {
+            String[] parameters = encoding.trim().split(";");
+            if (parameters[0].trim().equalsIgnoreCase("gzip")) {
+                return parameters.length == 1 || !parameters[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    private interface JsonBodyWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    // JSON first, so that a wildcard Accept header keeps getting JSON
+    private enum TopologyFormat {
+        JSON(MediaType.APPLICATION_JSON, TopologySnapshotService.JSON_REPRESENTATION),
+        CBOR(MediaType.APPLICATION_CBOR, "cbor"),
+        SMILE(MediaType.valueOf(APPLICATION_SMILE_VALUE), "smile"),
+        PACKED(MediaType.valueOf(PackedTopology.MEDIA_TYPE_VALUE), "packed");
+
+        private final MediaType mediaType;
+        private final String representation;
+
+        TopologyFormat(MediaType mediaType, String representation) {
+            this.mediaType = mediaType;
+            this.representation = representation;
+        }
     }
 
     @PostMapping
@@ -72,4 +432,43 @@ public class DeviceController {
     public Device createDevice(@RequestBody Device device) {
         return deviceService.save(device);
     }
+
+    @PostMapping("/bulk")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "OK, rejected Devices are listed in errors")
+    })
+    public BulkRegistrationResult createDevices(@RequestBody List<Device> devices) {
+        return deviceService.saveAll(devices);
+    }
+
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE})
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "OK, rejected rows are listed in errors"),
+            @ApiResponse(responseCode = "400", description = "Validation Error", content = @Content)
+    })
+    public ImportReport importDevices(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                      InputStream body) {
+        ImportFormat format = MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.valueOf(TEXT_CSV_VALUE))
+                ? ImportFormat.CSV
+                : ImportFormat.NDJSON;
+        return deviceImportService.importDevices(body, format, "request body");
+    }
+
+    @PostMapping("/import/file")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "OK, rejected rows are listed in errors"),
+            @ApiResponse(responseCode = "400", description = "Validation Error", content = @Content)
+    })
+    public ImportReport importDevicesFromFile(@RequestParam String path) {
+        return deviceImportService.importDevicesFromFile(path);
+    }
+
+    @GetMapping("/import/status")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "OK"),
+            @ApiResponse(responseCode = "400", description = "No import has been started", content = @Content)
+    })
+    public ImportReport getImportStatus() {
+        return deviceImportService.getLastImport();
+    }
 }
@@ -1,8 +1,24 @@
 package com.michalkrol.deviceinventory.exception;
 
 public class DeviceInventoryException extends RuntimeException {
+
+    // the validation rule a request broke, counted per rule in the device.validation.rejections metric
+    public enum Rule {
+        MAC_ADDRESS, SELF_UPLINK, DUPLICATE, UPLINK_MISSING, ACCESS_POINT_UPLINK, CYCLE, NOT_FOUND, REQUEST
+    }
+
+    private final Rule rule;
+
     public DeviceInventoryException(String message) {
+        this(Rule.REQUEST, message);
+    }
+
+    public DeviceInventoryException(Rule rule, String message) {
         super(message);
+        this.rule = rule;
     }
-}
 
+    public Rule getRule() {
+        return rule;
+    }
+}
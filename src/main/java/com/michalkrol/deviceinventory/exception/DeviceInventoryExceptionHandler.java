@@ -1,5 +1,6 @@
 package com.michalkrol.deviceinventory.exception;
 
+import com.michalkrol.deviceinventory.config.DeviceMetrics;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -8,8 +9,15 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 @ControllerAdvice
 public class DeviceInventoryExceptionHandler {
 
+    private final DeviceMetrics deviceMetrics;
+
+    public DeviceInventoryExceptionHandler(DeviceMetrics deviceMetrics) {
+        this.deviceMetrics = deviceMetrics;
+    }
+
     @ExceptionHandler(DeviceInventoryException.class)
     public ResponseEntity<String> handleValidationException(DeviceInventoryException exception) {
+        deviceMetrics.recordRejection(exception.getRule());
         return ResponseEntity
                 .status(HttpStatus.BAD_REQUEST)
                 .body(exception.getMessage());
@@ -0,0 +1,15 @@
+package com.michalkrol.deviceinventory.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Builder
+@Data
+public class BulkRegistrationResult {
+
+    private int registered;
+
+    private List<BulkRegistrationError> errors;
+}
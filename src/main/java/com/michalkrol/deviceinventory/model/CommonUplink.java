@@ -0,0 +1,25 @@
+package com.michalkrol.deviceinventory.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class CommonUplink {
+
+    // null when the common uplink is not registered itself
+    private DeviceType deviceType;
+
+    @Schema(
+            description = "Lowest Device both Devices are connected through, or one of them",
+            example = "00:1A:2B:3C:4D:5A"
+    )
+    private String macAddress;
+
+    @Schema(description = "Number of uplink hops from the first Device")
+    private int firstDistance;
+
+    @Schema(description = "Number of uplink hops from the second Device")
+    private int secondDistance;
+}
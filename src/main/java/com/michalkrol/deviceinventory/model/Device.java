@@ -5,14 +5,27 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.Data;
 
 @Data
 @Entity
+@Table(
+        uniqueConstraints = @UniqueConstraint(name = "uk_device_mac_address", columnNames = "macAddress"),
+        indexes = {
+                @Index(name = "idx_device_type_mac_address", columnList = "deviceType, macAddress"),
+                @Index(name = "idx_device_uplink_mac_address", columnList = "uplinkMacAddress")
+        }
+)
 public class Device {
 
+    // ids are handed out in blocks of one JDBC batch, one sequence call per 500 inserts
     @Id
-    @GeneratedValue(strategy= GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "device_seq")
+    @SequenceGenerator(name = "device_seq", allocationSize = 500)
     @Schema(hidden = true)
     private Long id;
 
@@ -0,0 +1,24 @@
+package com.michalkrol.deviceinventory.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Builder
+@Data
+public class DeviceChanges {
+
+    @Schema(description = "Devices added after the requested sequence, in the order they were added")
+    private List<TopologyEvent> changes;
+
+    @Schema(description = "Sequence to request the next changes after")
+    private long nextSince;
+
+    private boolean hasMore;
+
+    @Schema(description = "The requested changes are no longer available: fetch the whole inventory after"
+            + " this response and continue from nextSince")
+    private boolean resyncRequired;
+}
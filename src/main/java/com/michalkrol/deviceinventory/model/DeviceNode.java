@@ -1,5 +1,6 @@
 package com.michalkrol.deviceinventory.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
 
@@ -16,6 +17,15 @@ public class DeviceNode {
     private String macAddress;
     private List<DeviceNode> linkedDevices =  new ArrayList<>();
 
+    // only set on depth limited or paginated topologies
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Schema(description = "Number of Devices below this one, returned or not")
+    private Integer descendantCount;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Schema(description = "Whether linked Devices have been left out because of the depth or page limit")
+    private Boolean hasMore;
+
     public DeviceNode(String macAddress) {
         this.macAddress = macAddress;
     }
@@ -0,0 +1,17 @@
+package com.michalkrol.deviceinventory.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Builder
+@Data
+public class DevicePage {
+
+    private List<DeviceEntry> devices;
+
+    @Schema(description = "Cursor of the next page, absent on the last page")
+    private String nextCursor;
+}
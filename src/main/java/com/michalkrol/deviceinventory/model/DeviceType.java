@@ -1,6 +1,7 @@
 package com.michalkrol.deviceinventory.model;
 
 public enum DeviceType {
+    // declaration order is the sorting priority, it is also the persisted ordinal
     GATEWAY,
     SWITCH,
     ACCESS_POINT
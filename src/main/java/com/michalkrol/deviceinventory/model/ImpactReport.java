@@ -0,0 +1,26 @@
+package com.michalkrol.deviceinventory.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Builder
+@Data
+public class ImpactReport {
+
+    private DeviceType deviceType;
+
+    @Schema(
+            description = "Device MAC Address",
+            example = "00:1A:2B:3C:4D:5A"
+    )
+    private String macAddress;
+
+    @Schema(description = "Number of Devices connected through this one, which go down if it fails")
+    private int affectedDeviceCount;
+
+    @Schema(description = "Affected Devices in topology order, up to the requested limit")
+    private List<DeviceEntry> affectedDevices;
+}
@@ -0,0 +1,21 @@
+package com.michalkrol.deviceinventory.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class ImportError {
+
+    @Schema(description = "Line of the rejected row in the imported data")
+    private long line;
+
+    @Schema(
+            description = "Device MAC Address",
+            example = "00:1A:2B:3C:4D:5A"
+    )
+    private String macAddress;
+
+    private String message;
+}
@@ -0,0 +1,25 @@
+package com.michalkrol.deviceinventory.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Builder
+@Data
+public class ImportReport {
+
+    private String source;
+
+    private boolean completed;
+
+    private long processed;
+
+    private long imported;
+
+    private long rejected;
+
+    private List<ImportError> errors;
+
+    private boolean errorsTruncated;
+}
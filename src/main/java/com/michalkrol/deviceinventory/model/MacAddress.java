@@ -0,0 +1,53 @@
+package com.michalkrol.deviceinventory.model;
+
+import com.michalkrol.deviceinventory.validation.MacAddressValidator;
+
+public record MacAddress(long value) implements Comparable<MacAddress> {
+
+    public static final long NONE = -1L;
+
+    private static final long MAX_VALUE = 0xFFFF_FFFF_FFFFL;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    public MacAddress {
+        if (value < 0 || value > MAX_VALUE) {
+            throw new IllegalArgumentException("MAC address must fit in 48 bits: " + value);
+        }
+    }
+
+    public static MacAddress parse(String macAddress) {
+        return new MacAddress(toLong(macAddress));
+    }
+
+    public static MacAddress parse(String macAddress, boolean lenient) {
+        return new MacAddress(MacAddressValidator.parseMacAddress(macAddress, lenient));
+    }
+
+    public static long toLong(String macAddress) {
+        return MacAddressValidator.parseMacAddress(macAddress);
+    }
+
+    public static String toString(long macAddress) {
+        char[] chars = new char[17];
+        for (int octet = 0; octet < 6; octet++) {
+            int shift = 40 - octet * 8;
+            int position = octet * 3;
+            chars[position] = HEX_DIGITS[(int) (macAddress >>> (shift + 4)) & 0xF];
+            chars[position + 1] = HEX_DIGITS[(int) (macAddress >>> shift) & 0xF];
+            if (octet < 5) {
+                chars[position + 2] = ':';
+            }
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public int compareTo(MacAddress other) {
+        return Long.compare(value, other.value);
+    }
+
+    @Override
+    public String toString() {
+        return toString(value);
+    }
+}
@@ -0,0 +1,29 @@
+package com.michalkrol.deviceinventory.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Map;
+
+@Builder
+@Data
+public class SubtreeAggregates {
+
+    private DeviceType deviceType;
+
+    @Schema(
+            description = "Device MAC Address",
+            example = "00:1A:2B:3C:4D:5A"
+    )
+    private String macAddress;
+
+    @Schema(description = "Number of Devices below this one")
+    private int descendantCount;
+
+    @Schema(description = "Number of Devices below this one per Device type")
+    private Map<DeviceType, Integer> descendantCountsByType;
+
+    @Schema(description = "Levels of linked Devices below this one, 0 if nothing is linked")
+    private int maxDepthBelow;
+}
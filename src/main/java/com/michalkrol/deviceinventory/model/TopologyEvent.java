@@ -0,0 +1,24 @@
+package com.michalkrol.deviceinventory.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TopologyEvent {
+
+    @Schema(description = "Inventory version after the Device has been added, to resume the stream from")
+    private long sequence;
+
+    private DeviceType deviceType;
+
+    @Schema(description = "MAC address of the added Device", example = "00:1A:2B:3C:4D:5E")
+    private String macAddress;
+
+    // absent for a root
+    @Schema(description = "MAC address of the uplink Device", example = "00:1A:2B:3C:4D:5A")
+    private String uplinkMacAddress;
+}
@@ -1,11 +1,49 @@
 package com.michalkrol.deviceinventory.repository;
 
 import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface DeviceRepository extends JpaRepository<Device,Long> {
 
     Optional<Device> findByMacAddress(String macAddress);
+
+    boolean existsByMacAddress(String macAddress);
+
+    // the root and all of its descendants in registration order, union stops on cycles that bypassed validation
+    @Query(value = """
+            with recursive subtree(id, device_type, mac_address, uplink_mac_address) as (
+                select id, device_type, mac_address, uplink_mac_address from device where mac_address = :macAddress
+                union
+                select d.id, d.device_type, d.mac_address, d.uplink_mac_address
+                from device d join subtree s on d.uplink_mac_address = s.mac_address
+            )
+            select id, device_type, mac_address, uplink_mac_address from subtree order by id""", nativeQuery = true)
+    List<Device> findSubtree(String macAddress);
+
+    // 0 for an empty table
+    @Query("select coalesce(max(d.id), 0) from Device d")
+    long findMaxId();
+
+    // Keyset pagination over the (deviceType, macAddress) index. Both queries return typed devices only, the
+    // devices without a type follow them through findUntypedSortedAfter, as in DeviceSortingUtils.DEVICE_ORDER.
+    @Query("select d from Device d where d.deviceType is not null order by d.deviceType, d.macAddress")
+    List<Device> findSorted(Limit limit);
+
+    @Query("""
+            select d from Device d
+            where d.deviceType > :deviceType or (d.deviceType = :deviceType and d.macAddress > :macAddress)
+            order by d.deviceType, d.macAddress""")
+    List<Device> findSortedAfter(DeviceType deviceType, String macAddress, Limit limit);
+
+    @Query("""
+            select d from Device d
+            where d.deviceType is null and d.macAddress > :macAddress
+            order by d.macAddress""")
+    List<Device> findUntypedSortedAfter(String macAddress, Limit limit);
 }
@@ -0,0 +1,63 @@
+package com.michalkrol.deviceinventory.service;
+
+import com.michalkrol.deviceinventory.config.DeviceProperties;
+import com.michalkrol.deviceinventory.exception.DeviceInventoryException;
+import com.michalkrol.deviceinventory.model.DeviceChanges;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.TopologyEvent;
+import com.michalkrol.deviceinventory.utils.DeviceChangeJournal;
+import com.michalkrol.deviceinventory.utils.DeviceTopologyIndex;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+// Sequences are inventory versions. A load or restore sets the version to the number of devices, so a client
+// that was up to date before a restart still is afterwards, every older position has to resync.
+@Service
+public class DeviceChangeService {
+
+    private static final int MAX_LIMIT = 1000;
+
+    private final DeviceChangeJournal journal;
+
+    public DeviceChangeService(DeviceTopologyIndex topologyIndex, DeviceProperties deviceProperties) {
+        this.journal = new DeviceChangeJournal(deviceProperties.getChanges().getRetention());
+        journal.reset(topologyIndex.version());
+        topologyIndex.addListener(new DeviceTopologyIndex.Listener() {
+            @Override
+            public void deviceAdded(long version, long macAddress, DeviceType deviceType, long uplinkMacAddress) {
+                journal.append(version, macAddress, deviceType, uplinkMacAddress);
+            }
+
+            @Override
+            public void reloaded(long version) {
+                journal.reset(version);
+            }
+        });
+    }
+
+    public DeviceChanges getChanges(long since, int limit) {
+        if (since < 0) {
+            throw new DeviceInventoryException("Sequence must not be negative.");
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new DeviceInventoryException("Limit must be between 1 and " + MAX_LIMIT + ".");
+        }
+        // taken first, a resyncing client misses nothing added while it fetches the inventory
+        long lastSequence = journal.lastSequence();
+        List<TopologyEvent> changes = journal.read(since, limit);
+        if (changes == null) {
+            return DeviceChanges.builder()
+                    .changes(List.of())
+                    .nextSince(lastSequence)
+                    .resyncRequired(true)
+                    .build();
+        }
+        long nextSince = changes.isEmpty() ? since : changes.getLast().getSequence();
+        return DeviceChanges.builder()
+                .changes(changes)
+                .nextSince(nextSince)
+                .hasMore(nextSince < journal.lastSequence())
+                .build();
+    }
+}
@@ -0,0 +1,243 @@
+package com.michalkrol.deviceinventory.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michalkrol.deviceinventory.config.DeviceProperties;
+import com.michalkrol.deviceinventory.exception.DeviceInventoryException;
+import com.michalkrol.deviceinventory.model.BulkRegistrationError;
+import com.michalkrol.deviceinventory.model.BulkRegistrationResult;
+import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.ImportError;
+import com.michalkrol.deviceinventory.model.ImportReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Service
+public class DeviceImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceImportService.class);
+
+    private static final String CSV_HEADER = "deviceType";
+
+    public enum ImportFormat {
+        NDJSON, CSV;
+
+        public static ImportFormat fromFileName(String fileName) {
+            return fileName.toLowerCase().endsWith(".csv") ? CSV : NDJSON;
+        }
+    }
+
+    private final DeviceService deviceService;
+    private final DeviceProperties deviceProperties;
+    private final ObjectMapper objectMapper;
+    private final AtomicReference<ImportReport> lastImport = new AtomicReference<>();
+
+    public DeviceImportService(DeviceService deviceService, DeviceProperties deviceProperties,
+                               ObjectMapper objectMapper) {
+        this.deviceService = deviceService;
+        this.deviceProperties = deviceProperties;
+        this.objectMapper = objectMapper;
+    }
+
+    public ImportReport importDevicesFromFile(String path) {
+        Path file = resolveImportFile(path);
+        try (InputStream input = Files.newInputStream(file)) {
+            return importDevices(input, ImportFormat.fromFileName(file.getFileName().toString()), file.toString());
+        } catch (IOException exception) {
+            throw new DeviceInventoryException("Import file " + path + " cannot be read: " + exception.getMessage());
+        }
+    }
+
+    // Rows are read, validated and committed one chunk at a time: the next chunk is not read from the
+    // stream before the previous one is committed, so a fast producer is throttled by the socket.
+    public ImportReport importDevices(InputStream input, ImportFormat format, String source) {
+        DeviceProperties.ImportConfig importConfig = deviceProperties.getImports();
+        ImportProgress progress = new ImportProgress(source, importConfig.getMaxReportedErrors());
+        List<Device> chunk = new ArrayList<>(importConfig.getChunkSize());
+        long[] chunkLines = new long[importConfig.getChunkSize()];
+        lastImport.set(progress.toReport(false));
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (format == ImportFormat.CSV && lineNumber == 1 && line.startsWith(CSV_HEADER))) {
+                    continue;
+                }
+                progress.processed++;
+                Device device;
+                try {
+                    device = format == ImportFormat.CSV ? parseCsvRow(line) : parseJsonRow(line);
+                } catch (DeviceInventoryException exception) {
+                    progress.reject(lineNumber, null, exception.getMessage());
+                    continue;
+                }
+                chunkLines[chunk.size()] = lineNumber;
+                chunk.add(device);
+                if (chunk.size() == chunkLines.length) {
+                    importChunk(chunk, chunkLines, progress);
+                }
+            }
+        } catch (IOException exception) {
+            throw new DeviceInventoryException("Import from " + source + " failed after " + progress.processed
+                    + " rows: " + exception.getMessage());
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, chunkLines, progress);
+        }
+
+        ImportReport report = progress.toReport(true);
+        lastImport.set(report);
+        log.info("Import from {} completed: {} rows processed, {} imported, {} rejected",
+                source, report.getProcessed(), report.getImported(), report.getRejected());
+        return report;
+    }
+
+    // reads a whole file up front, failing on the first invalid row, for inventories that are validated as a whole
+    public List<Device> readDevices(Path file) {
+        ImportFormat format = ImportFormat.fromFileName(file.getFileName().toString());
+        List<Device> devices = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (format == ImportFormat.CSV && lineNumber == 1 && line.startsWith(CSV_HEADER))) {
+                    continue;
+                }
+                try {
+                    devices.add(format == ImportFormat.CSV ? parseCsvRow(line) : parseJsonRow(line));
+                } catch (DeviceInventoryException exception) {
+                    throw new DeviceInventoryException(exception.getRule(),
+                            file + " line " + lineNumber + ": " + exception.getMessage());
+                }
+            }
+        } catch (IOException exception) {
+            throw new DeviceInventoryException("File " + file + " cannot be read: " + exception.getMessage());
+        }
+        return devices;
+    }
+
+    public ImportReport getLastImport() {
+        ImportReport report = lastImport.get();
+        if (report == null) {
+            throw new DeviceInventoryException("No import has been started.");
+        }
+        return report;
+    }
+
+    private void importChunk(List<Device> chunk, long[] chunkLines, ImportProgress progress) {
+        BulkRegistrationResult result = deviceService.saveAll(chunk);
+        progress.imported += result.getRegistered();
+        for (BulkRegistrationError error : result.getErrors()) {
+            progress.reject(chunkLines[error.getIndex()], error.getMacAddress(), error.getMessage());
+        }
+        chunk.clear();
+        lastImport.set(progress.toReport(false));
+        log.info("Import from {}: {} rows processed, {} imported, {} rejected",
+                progress.source, progress.processed, progress.imported, progress.rejected);
+    }
+
+    private Device parseJsonRow(String line) {
+        try {
+            Device device = objectMapper.readValue(line, Device.class);
+            device.setId(null);
+            return device;
+        } catch (JsonProcessingException exception) {
+            throw new DeviceInventoryException("Invalid JSON: " + exception.getOriginalMessage());
+        }
+    }
+
+    private Device parseCsvRow(String line) {
+        String[] columns = line.split(",", -1);
+        if (columns.length < 2 || columns.length > 3) {
+            throw new DeviceInventoryException("Expected deviceType,macAddress,uplinkMacAddress columns.");
+        }
+        Device device = new Device();
+        try {
+            device.setDeviceType(DeviceType.valueOf(unquote(columns[0])));
+        } catch (IllegalArgumentException exception) {
+            throw new DeviceInventoryException("Unknown device type " + columns[0] + ".");
+        }
+        device.setMacAddress(unquote(columns[1]));
+        if (columns.length == 3 && !unquote(columns[2]).isEmpty()) {
+            device.setUplinkMacAddress(unquote(columns[2]));
+        }
+        return device;
+    }
+
+    private static String unquote(String column) {
+        String value = column.trim();
+        return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")
+                ? value.substring(1, value.length() - 1)
+                : value;
+    }
+
+    private Path resolveImportFile(String path) {
+        String directory = deviceProperties.getImports().getDirectory();
+        if (directory == null || directory.isBlank()) {
+            throw new DeviceInventoryException("Importing from files is disabled.");
+        }
+        Path importDirectory = Path.of(directory).toAbsolutePath().normalize();
+        Path file = importDirectory.resolve(path).normalize();
+        if (!file.startsWith(importDirectory)) {
+            throw new DeviceInventoryException("Import file " + path + " is outside of the import directory.");
+        }
+        if (!Files.isRegularFile(file)) {
+            throw new DeviceInventoryException("Import file " + path + " not found.");
+        }
+        return file;
+    }
+
+    private static class ImportProgress {
+
+        private final String source;
+        private final int maxReportedErrors;
+        private final List<ImportError> errors = new ArrayList<>();
+        private long processed;
+        private long imported;
+        private long rejected;
+
+        ImportProgress(String source, int maxReportedErrors) {
+            this.source = source;
+            this.maxReportedErrors = maxReportedErrors;
+        }
+
+        void reject(long line, String macAddress, String message) {
+            rejected++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(ImportError.builder()
+                        .line(line)
+                        .macAddress(macAddress)
+                        .message(message)
+                        .build());
+            }
+        }
+
+        ImportReport toReport(boolean completed) {
+            return ImportReport.builder()
+                    .source(source)
+                    .completed(completed)
+                    .processed(processed)
+                    .imported(imported)
+                    .rejected(rejected)
+                    .errors(List.copyOf(errors))
+                    .errorsTruncated(rejected > errors.size())
+                    .build();
+        }
+    }
+}
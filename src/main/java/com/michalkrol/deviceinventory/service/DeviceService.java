@@ -1,64 +1,442 @@
 package com.michalkrol.deviceinventory.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.michalkrol.deviceinventory.config.DeviceMetrics;
+import com.michalkrol.deviceinventory.config.DeviceMetrics.Query;
+import com.michalkrol.deviceinventory.config.DeviceProperties;
 import com.michalkrol.deviceinventory.exception.DeviceInventoryException;
+import com.michalkrol.deviceinventory.exception.DeviceInventoryException.Rule;
+import com.michalkrol.deviceinventory.model.BulkRegistrationResult;
+import com.michalkrol.deviceinventory.model.CommonUplink;
 import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceEntry;
 import com.michalkrol.deviceinventory.model.DeviceNode;
+import com.michalkrol.deviceinventory.model.DevicePage;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.ImpactReport;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.model.SubtreeAggregates;
 import com.michalkrol.deviceinventory.repository.DeviceRepository;
-import com.michalkrol.deviceinventory.utils.DeviceSortingUtils;
+import com.michalkrol.deviceinventory.utils.DeviceBatchUtils;
+import com.michalkrol.deviceinventory.utils.DeviceBatchUtils.DeviceBatch;
+import com.michalkrol.deviceinventory.utils.DeviceTopologyIndex;
+import com.michalkrol.deviceinventory.utils.PackedTopology;
+import com.michalkrol.deviceinventory.utils.SortedDeviceIndex;
+import com.michalkrol.deviceinventory.utils.StripedLocks;
 import com.michalkrol.deviceinventory.utils.TopologyUtils;
-import com.michalkrol.deviceinventory.validation.MacAddressValidator;
+import com.michalkrol.deviceinventory.utils.TopologyUtils.TopologyCycles;
+import com.michalkrol.deviceinventory.utils.TopologyUtils.TopologyLimits;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
 public class DeviceService {
 
+    private static final Logger log = LoggerFactory.getLogger(DeviceService.class);
+    // keep in line with spring.jpa.properties.hibernate.jdbc.batch_size
+    private static final int PERSIST_BATCH_SIZE = 500;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_TOPOLOGY_DEPTH = 1000;
+    private static final int REGISTRATION_LOCK_STRIPES = 256;
+
     private final DeviceRepository deviceRepository;
+    private final DeviceTopologyIndex topologyIndex;
+    private final SortedDeviceIndex sortedDeviceIndex;
+    private final DeviceProperties deviceProperties;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final DeviceMetrics deviceMetrics;
+    private final StripedLocks registrationLocks = new StripedLocks(REGISTRATION_LOCK_STRIPES);
+    private final ReadWriteLock bulkRegistrationLock = new ReentrantReadWriteLock();
 
-    public DeviceService(DeviceRepository deviceRepository) {
+    public DeviceService(DeviceRepository deviceRepository, DeviceTopologyIndex topologyIndex,
+                         SortedDeviceIndex sortedDeviceIndex, DeviceProperties deviceProperties,
+                         EntityManager entityManager, TransactionTemplate transactionTemplate,
+                         DeviceMetrics deviceMetrics) {
         this.deviceRepository = deviceRepository;
+        this.topologyIndex = topologyIndex;
+        this.sortedDeviceIndex = sortedDeviceIndex;
+        this.deviceProperties = deviceProperties;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.deviceMetrics = deviceMetrics;
     }
 
     public Device save(Device device) {
-        List<Device> devices = deviceRepository.findAll();
-        if (device.getMacAddress().equals(device.getUplinkMacAddress())) {
-            throw new DeviceInventoryException("MAC address must be different from the uplink MAC address");
+        MacAddress macAddress = MacAddress.parse(device.getMacAddress(), deviceProperties.isLenientMacAddresses());
+        MacAddress uplinkMacAddress = MacAddress.parse(device.getUplinkMacAddress(),
+                deviceProperties.isLenientMacAddresses());
+        if (macAddress.equals(uplinkMacAddress)) {
+            throw new DeviceInventoryException(Rule.SELF_UPLINK,
+                    "MAC address must be different from the uplink MAC address");
+        }
+        device.setMacAddress(macAddress.toString());
+        device.setUplinkMacAddress(uplinkMacAddress.toString());
+        TopologyUtils.checkUplinkMacAddressExistence(uplinkMacAddress, topologyIndex);
+        TopologyUtils.checkMacAddressUniqueness(macAddress, topologyIndex);
+        TopologyUtils.checkUplinkConnection(uplinkMacAddress, topologyIndex);
+
+        bulkRegistrationLock.readLock().lock();
+        try {
+            Device savedDevice;
+            do {
+                savedDevice = saveLocked(device, macAddress, uplinkMacAddress);
+            } while (savedDevice == null);
+            return savedDevice;
+        } finally {
+            bulkRegistrationLock.readLock().unlock();
+        }
+    }
+
+    // A new MAC address has no linked devices and cannot close a cycle, only its own stripe is locked against
+    // duplicates. A placeholder already heads a subtree, linking it also locks the root of the tree it joins,
+    // so two links that would only form a cycle together never pass their checks concurrently.
+    private Device saveLocked(Device device, MacAddress macAddress, MacAddress uplinkMacAddress) {
+        long treeRootMacAddress = topologyIndex.isPlaceholder(macAddress.value())
+                ? topologyIndex.getRootMacAddress(uplinkMacAddress.value())
+                : macAddress.value();
+        return registrationLocks.withLocks(macAddress.value(), treeRootMacAddress, () -> {
+            if (treeRootMacAddress != macAddress.value()
+                    && topologyIndex.getRootMacAddress(uplinkMacAddress.value()) != treeRootMacAddress) {
+                // the tree has been linked elsewhere while waiting, lock its new root instead
+                return null;
+            }
+            // devices and their types are never removed, only these checks can be invalidated by other writers
+            TopologyUtils.checkMacAddressUniqueness(macAddress, topologyIndex);
+            deviceMetrics.recordCycleCheck(() ->
+                    TopologyUtils.checkNoCycle(macAddress, uplinkMacAddress, topologyIndex));
+            Device savedDevice;
+            try {
+                savedDevice = deviceRepository.save(device);
+            } catch (DataIntegrityViolationException exception) {
+                // registered by a writer that bypassed this service, e.g. through the H2 console
+                if (deviceRepository.existsByMacAddress(device.getMacAddress())) {
+                    throw new DeviceInventoryException(Rule.DUPLICATE, "A Device with MAC address " + macAddress
+                            + " already exists.");
+                }
+                throw exception;
+            }
+            topologyIndex.add(savedDevice);
+            return savedDevice;
+        });
+    }
+
+    // a batch is validated as a whole against the inventory, so it excludes all other registrations
+    public BulkRegistrationResult saveAll(List<Device> devices) {
+        bulkRegistrationLock.writeLock().lock();
+        try {
+            DeviceBatch batch = DeviceBatchUtils.prepareBatch(devices, topologyIndex,
+                    deviceProperties.isLenientMacAddresses());
+            try {
+                transactionTemplate.executeWithoutResult(status -> persistInBatches(batch.devices()));
+            } catch (DataIntegrityViolationException exception) {
+                throw new DeviceInventoryException(Rule.DUPLICATE,
+                        "Devices have been registered concurrently with the same MAC address,"
+                                + " no Device of the batch has been registered.");
+            }
+            topologyIndex.addAll(batch.devices());
+            return BulkRegistrationResult.builder()
+                    .registered(batch.devices().size())
+                    .errors(batch.errors())
+                    .build();
+        } finally {
+            bulkRegistrationLock.writeLock().unlock();
+        }
+    }
+
+    // fills an empty inventory, the seed is validated before the first insert and indexed without reading it back
+    public void seed(List<Device> devices) {
+        bulkRegistrationLock.writeLock().lock();
+        try {
+            DeviceBatchUtils.validateSeed(devices, deviceProperties.isLenientMacAddresses());
+            transactionTemplate.executeWithoutResult(status -> persistInBatches(devices));
+            topologyIndex.load(devices);
+        } finally {
+            bulkRegistrationLock.writeLock().unlock();
         }
-        MacAddressValidator.validateMacAddress(device.getMacAddress());
-        MacAddressValidator.validateMacAddress(device.getUplinkMacAddress());
-        TopologyUtils.checkUplinkMacAddressExistence(device, devices);
-        TopologyUtils.checkMacAddressUniqueness(device, devices);
-        TopologyUtils.checkUplinkConnection(device, devices);
-        return deviceRepository.save(device);
     }
 
-    public Device findByMacAddress(String macAddress) {
-        MacAddressValidator.validateMacAddress(macAddress);
-        return deviceRepository.findByMacAddress(macAddress)
-                .orElseThrow(() -> new DeviceInventoryException("A Device with MAC Address " + macAddress
-                        + " not found."));
+    private void persistInBatches(List<Device> devices) {
+        for (int from = 0; from < devices.size(); from += PERSIST_BATCH_SIZE) {
+            deviceRepository.saveAll(devices.subList(from, Math.min(from + PERSIST_BATCH_SIZE, devices.size())));
+            // flush the JDBC batch and drop the managed entities so the persistence context stays small
+            entityManager.flush();
+            entityManager.clear();
+        }
+    }
+
+    public Device findByMacAddress(MacAddress macAddress) {
+        return topologyIndex.find(macAddress.value())
+                .orElseThrow(() -> new DeviceInventoryException(Rule.NOT_FOUND,
+                        "A Device with MAC Address " + macAddress + " not found."));
+    }
+
+    // the per type sorted sets are concatenated in priority order, nothing is sorted per request
+    public List<DeviceEntry> findAllSorted() {
+        return deviceMetrics.recordSort(() -> sortedDeviceIndex.list(0, Integer.MAX_VALUE));
     }
 
-    public List<Device> findAllSorted() {
-        List<Device> devices = deviceRepository.findAll();
-        DeviceSortingUtils.sortDevices(devices);
-        return devices;
+    // a page starts after the cursor device or at the offset, not both
+    public DevicePage findSortedPage(String cursor, Integer offset, int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new DeviceInventoryException("Page size must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        if (cursor != null && offset != null) {
+            throw new DeviceInventoryException("Either a page cursor or an offset can be given, not both.");
+        }
+        if (offset != null && offset < 0) {
+            throw new DeviceInventoryException("Offset must not be negative.");
+        }
+        DeviceEntry last = cursor == null ? null : decodeCursor(cursor);
+        List<DeviceEntry> devices;
+        // one extra row tells whether another page follows
+        if (offset == null) {
+            devices = findSortedAfter(last, size + 1);
+        } else if (topologyIndex.isLoaded()) {
+            devices = sortedDeviceIndex.list(offset, size + 1);
+        } else {
+            throw new DeviceInventoryException("Paging by offset is not available until the inventory is loaded.");
+        }
+        boolean hasNextPage = devices.size() > size;
+        List<DeviceEntry> page = hasNextPage ? devices.subList(0, size) : devices;
+        return DevicePage.builder()
+                .devices(page)
+                .nextCursor(hasNextPage ? encodeCursor(page.getLast()) : null)
+                .build();
     }
 
-    public List<DeviceNode> getTopology() {
-        List<Device> devices = deviceRepository.findAll();
-        TopologyUtils.validateNoCycles(devices);
-        return TopologyUtils.prepareDeviceTopology(devices);
+    public void forEachSorted(int pageSize, Consumer<List<DeviceEntry>> pageConsumer) {
+        DeviceEntry last = null;
+        List<DeviceEntry> devices;
+        do {
+            devices = findSortedAfter(last, pageSize);
+            if (!devices.isEmpty()) {
+                pageConsumer.accept(devices);
+                last = devices.getLast();
+            }
+        } while (devices.size() == pageSize);
+    }
+
+    // until DeviceDataLoader has filled the index, pages are read from the database
+    private List<DeviceEntry> findSortedAfter(DeviceEntry last, int limit) {
+        if (topologyIndex.isLoaded()) {
+            int position = last == null
+                    ? 0
+                    : sortedDeviceIndex.positionAfter(last.getDeviceType(), MacAddress.toLong(last.getMacAddress()));
+            return sortedDeviceIndex.list(position, limit);
+        }
+        List<Device> devices;
+        if (last != null && last.getDeviceType() == null) {
+            devices = deviceRepository.findUntypedSortedAfter(last.getMacAddress(), Limit.of(limit));
+        } else {
+            devices = new ArrayList<>(last == null
+                    ? deviceRepository.findSorted(Limit.of(limit))
+                    : deviceRepository.findSortedAfter(last.getDeviceType(), last.getMacAddress(), Limit.of(limit)));
+            // a short page of typed devices continues with the first devices without a type
+            if (devices.size() < limit) {
+                devices.addAll(deviceRepository.findUntypedSortedAfter("", Limit.of(limit - devices.size())));
+            }
+        }
+        deviceMetrics.recordRowsLoaded(Query.FIND_SORTED, devices);
+        return devices.stream()
+                .map(device -> DeviceEntry.builder()
+                        .deviceType(device.getDeviceType())
+                        .macAddress(device.getMacAddress())
+                        .build())
+                .toList();
+    }
+
+    // devices without a type are written with an empty type name
+    private static String encodeCursor(DeviceEntry device) {
+        String deviceType = device.getDeviceType() == null ? "" : device.getDeviceType().name();
+        String position = deviceType + "," + device.getMacAddress();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static DeviceEntry decodeCursor(String cursor) {
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(",");
+            return DeviceEntry.builder()
+                    .deviceType(position[0].isEmpty() ? null : DeviceType.valueOf(position[0]))
+                    .macAddress(MacAddress.parse(position[1]).toString())
+                    .build();
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DeviceInventoryException exception) {
+            throw new DeviceInventoryException("Invalid page cursor " + cursor + ".");
+        }
+    }
+
+    // until DeviceDataLoader has filled the index, a subtree is read from the database with a recursive query
+    public void checkDeviceExists(MacAddress macAddress) {
+        boolean exists = topologyIndex.isLoaded()
+                ? topologyIndex.contains(macAddress.value())
+                : deviceRepository.existsByMacAddress(macAddress.toString());
+        if (!exists) {
+            throw new DeviceInventoryException(Rule.NOT_FOUND, "A Device with MAC Address " + macAddress
+                    + " not found.");
+        }
+    }
+
+    public void writeSubDeviceTopology(MacAddress rootDeviceMacAddress, JsonGenerator generator) throws IOException {
+        DeviceTopologyIndex subtreeIndex = topologyIndex.isLoaded()
+                ? topologyIndex
+                : DeviceTopologyIndex.of(findSubtree(rootDeviceMacAddress));
+        TopologyUtils.writeSubDeviceTopology(generator, rootDeviceMacAddress, subtreeIndex);
+    }
+
+    public void writePackedSubDeviceTopology(MacAddress rootDeviceMacAddress, OutputStream outputStream)
+            throws IOException {
+        DeviceTopologyIndex subtreeIndex = topologyIndex.isLoaded()
+                ? topologyIndex
+                : DeviceTopologyIndex.of(findSubtree(rootDeviceMacAddress));
+        PackedTopology.writeSubDeviceTopology(outputStream, rootDeviceMacAddress, subtreeIndex);
+    }
+
+    // binary encodings of the full topology, JSON is served from TopologySnapshotService
+    public void writeDeviceTopology(JsonGenerator generator) throws IOException {
+        TopologyUtils.writeDeviceTopology(generator, topologyIndex);
+    }
+
+    public void writePackedDeviceTopology(OutputStream outputStream) throws IOException {
+        PackedTopology.writeDeviceTopology(outputStream, topologyIndex.view());
+    }
+
+    public List<DeviceNode> getTopology(Integer maxDepth, Integer childLimit, MacAddress cursor) {
+        TopologyLimits limits = toTopologyLimits(maxDepth, childLimit, cursor);
+        return deviceMetrics.recordTopology(() -> TopologyUtils.prepareDeviceTopology(topologyIndex, limits));
+    }
+
+    public DeviceNode getSubDeviceTopology(MacAddress rootDeviceMacAddress, Integer maxDepth, Integer childLimit,
+                                           MacAddress cursor) {
+        checkDeviceExists(rootDeviceMacAddress);
+        DeviceTopologyIndex subtreeIndex = topologyIndex.isLoaded()
+                ? topologyIndex
+                : DeviceTopologyIndex.of(findSubtree(rootDeviceMacAddress));
+        return TopologyUtils.prepareSubDeviceTopology(rootDeviceMacAddress, subtreeIndex,
+                toTopologyLimits(maxDepth, childLimit, cursor));
+    }
+
+    private List<Device> findSubtree(MacAddress rootDeviceMacAddress) {
+        return deviceMetrics.recordRowsLoaded(Query.FIND_SUBTREE,
+                deviceRepository.findSubtree(rootDeviceMacAddress.toString()));
+    }
+
+    private TopologyLimits toTopologyLimits(Integer maxDepth, Integer childLimit, MacAddress cursor) {
+        if (maxDepth != null && (maxDepth < 0 || maxDepth > MAX_TOPOLOGY_DEPTH)) {
+            throw new DeviceInventoryException("Maximum depth must be between 0 and " + MAX_TOPOLOGY_DEPTH + ".");
+        }
+        if (childLimit != null && (childLimit < 1 || childLimit > MAX_PAGE_SIZE)) {
+            throw new DeviceInventoryException("Child limit must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        return new TopologyLimits(maxDepth == null ? MAX_TOPOLOGY_DEPTH : maxDepth,
+                childLimit == null ? MAX_PAGE_SIZE : childLimit, cursor);
+    }
+
+    public List<DeviceEntry> getUplinkPath(MacAddress macAddress) {
+        List<DeviceEntry> uplinkPath = TopologyUtils.prepareUplinkPath(macAddress, topologyIndex);
+        if (uplinkPath == null) {
+            throw new DeviceInventoryException(Rule.NOT_FOUND, "A Device with MAC Address " + macAddress
+                    + " not found.");
+        }
+        return uplinkPath;
+    }
+
+    public CommonUplink getCommonUplink(MacAddress firstMacAddress, MacAddress secondMacAddress) {
+        checkRegistered(firstMacAddress);
+        checkRegistered(secondMacAddress);
+        CommonUplink commonUplink = TopologyUtils.findCommonUplink(firstMacAddress, secondMacAddress, topologyIndex);
+        if (commonUplink == null) {
+            throw new DeviceInventoryException("Devices " + firstMacAddress + " and " + secondMacAddress
+                    + " are not connected through a common uplink.");
+        }
+        return commonUplink;
+    }
+
+    public boolean isBehind(MacAddress macAddress, MacAddress uplinkMacAddress) {
+        checkRegistered(macAddress);
+        checkRegistered(uplinkMacAddress);
+        return TopologyUtils.isBehind(macAddress, uplinkMacAddress, topologyIndex);
+    }
+
+    public ImpactReport getImpactReport(MacAddress macAddress, int limit) {
+        if (limit < 0 || limit > MAX_PAGE_SIZE) {
+            throw new DeviceInventoryException("Limit must be between 0 and " + MAX_PAGE_SIZE + ".");
+        }
+        ImpactReport impactReport = TopologyUtils.prepareImpactReport(macAddress, topologyIndex, limit);
+        if (impactReport == null) {
+            throw new DeviceInventoryException(Rule.NOT_FOUND, "A Device with MAC Address " + macAddress
+                    + " not found.");
+        }
+        return impactReport;
+    }
+
+    public SubtreeAggregates getSubtreeAggregates(MacAddress macAddress) {
+        SubtreeAggregates subtreeAggregates = TopologyUtils.prepareSubtreeAggregates(macAddress, topologyIndex);
+        if (subtreeAggregates == null) {
+            throw new DeviceInventoryException(Rule.NOT_FOUND, "A Device with MAC Address " + macAddress
+                    + " not found.");
+        }
+        return subtreeAggregates;
+    }
+
+    public List<SubtreeAggregates> getLargestSubtrees(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new DeviceInventoryException("Limit must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        return TopologyUtils.prepareLargestSubtrees(topologyIndex, limit);
+    }
+
+    private void checkRegistered(MacAddress macAddress) {
+        if (!topologyIndex.contains(macAddress.value())) {
+            throw new DeviceInventoryException(Rule.NOT_FOUND, "A Device with MAC Address " + macAddress
+                    + " not found.");
+        }
+    }
+
+    // nothing is registered while the action runs, so the database and the topology index stay in step
+    public <T> T withRegistrationsPaused(Supplier<T> action) {
+        bulkRegistrationLock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            bulkRegistrationLock.writeLock().unlock();
+        }
+    }
+
+    // Cycles can only come from rows stored before registrations were checked for them. The devices on them
+    // and below them are left out of the index, the rest of the topology is served as usual.
+    public void loadTopology() {
+        List<Device> devices = deviceMetrics.recordRowsLoaded(Query.FIND_ALL, deviceRepository.findAll());
+        topologyIndex.load(devices);
+        TopologyCycles topologyCycles = TopologyUtils.findCycles(topologyIndex);
+        if (!topologyCycles.macAddresses().isEmpty()) {
+            Set<Long> cyclicMacAddresses = topologyCycles.macAddresses();
+            log.error("Cycles have been detected in the stored topology: {}, leaving out {} Devices on and below them",
+                    topologyCycles.cycles(), cyclicMacAddresses.size());
+            topologyIndex.load(devices.stream()
+                    .filter(device -> !cyclicMacAddresses.contains(MacAddress.toLong(device.getMacAddress())))
+                    .toList());
+        }
     }
 
-    public DeviceNode getSubDeviceTopology(String rootDeviceMacAddress) {
-        MacAddressValidator.validateMacAddress(rootDeviceMacAddress);
-        List<Device> devices = deviceRepository.findAll();
-        TopologyUtils.validateNoCycles(devices);
-        deviceRepository.findByMacAddress(rootDeviceMacAddress)
-                .orElseThrow(() -> new DeviceInventoryException("A Device with MAC Address " + rootDeviceMacAddress
-                        + " not found."));
-        return TopologyUtils.prepareSubDeviceTopology(rootDeviceMacAddress, devices);
+    // computed once at startup, so neither the first aggregate query nor the depth gauge waits for it
+    public void prepareAggregates() {
+        TopologyUtils.prepareAggregates(topologyIndex);
     }
 }
@@ -0,0 +1,94 @@
+package com.michalkrol.deviceinventory.service;
+
+import com.michalkrol.deviceinventory.config.DeviceProperties;
+import com.michalkrol.deviceinventory.repository.DeviceRepository;
+import com.michalkrol.deviceinventory.utils.DeviceTopologyIndex;
+import com.michalkrol.deviceinventory.utils.TopologyCheckpoint;
+import com.michalkrol.deviceinventory.utils.TopologyCheckpoint.Fingerprint;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Keeps a binary checkpoint of the topology index on disk, so a restart against an unchanged
+// database maps one file instead of loading every device through Hibernate.
+@Service
+public class TopologyCheckpointService {
+
+    private static final Logger log = LoggerFactory.getLogger(TopologyCheckpointService.class);
+
+    private final DeviceService deviceService;
+    private final DeviceRepository deviceRepository;
+    private final DeviceTopologyIndex topologyIndex;
+    private final Path path;
+    private volatile long checkpointedVersion = -1;
+
+    public TopologyCheckpointService(DeviceService deviceService, DeviceRepository deviceRepository,
+                                     DeviceTopologyIndex topologyIndex, DeviceProperties deviceProperties) {
+        this.deviceService = deviceService;
+        this.deviceRepository = deviceRepository;
+        this.topologyIndex = topologyIndex;
+        String configuredPath = deviceProperties.getCheckpoint().getPath();
+        this.path = configuredPath == null || configuredPath.isBlank() ? null : Path.of(configuredPath);
+    }
+
+    // false when the topology has to be loaded from the database instead
+    public boolean restore() {
+        if (path == null) {
+            return false;
+        }
+        return deviceService.withRegistrationsPaused(() -> {
+            try {
+                if (TopologyCheckpoint.restore(path, fingerprint(), topologyIndex)) {
+                    checkpointedVersion = topologyIndex.version();
+                    log.info("Topology of {} devices restored from {}", topologyIndex.size(), path);
+                    return true;
+                }
+                log.info("Topology checkpoint {} is missing or stale", path);
+            } catch (IOException exception) {
+                log.warn("Topology checkpoint {} cannot be used: {}", path, exception.getMessage());
+            }
+            return false;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${devices.checkpoint.interval:PT5M}",
+            initialDelayString = "${devices.checkpoint.interval:PT5M}")
+    public void checkpoint() {
+        if (path == null || !topologyIndex.isLoaded() || topologyIndex.version() == checkpointedVersion) {
+            return;
+        }
+        try {
+            // only the capture pauses registrations, the file is written from the lock-free view
+            CheckpointSource source = deviceService.withRegistrationsPaused(() ->
+                    new CheckpointSource(topologyIndex.view(), fingerprint()));
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            TopologyCheckpoint.write(path, source.view(), source.fingerprint());
+            checkpointedVersion = source.view().version();
+        } catch (IOException | DataAccessException | TransactionException exception) {
+            log.warn("Topology checkpoint {} cannot be written: {}", path, exception.getMessage());
+        }
+    }
+
+    // needs the database to be still open, an H2 URL has to set DB_CLOSE_ON_EXIT=FALSE
+    @PreDestroy
+    public void checkpointOnShutdown() {
+        checkpoint();
+    }
+
+    private Fingerprint fingerprint() {
+        return new Fingerprint(deviceRepository.count(), deviceRepository.findMaxId());
+    }
+
+    private record CheckpointSource(DeviceTopologyIndex.View view, Fingerprint fingerprint) {
+    }
+}
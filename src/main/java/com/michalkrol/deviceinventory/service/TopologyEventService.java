@@ -0,0 +1,165 @@
+package com.michalkrol.deviceinventory.service;
+
+import com.michalkrol.deviceinventory.config.DeviceProperties;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.model.TopologyEvent;
+import com.michalkrol.deviceinventory.utils.DeviceTopologyIndex;
+import jakarta.annotation.PreDestroy;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Streams every added device to SSE subscribers. Writers only store the event in a ring buffer indexed by
+// the inventory version; each subscriber catches up from its own position on a virtual thread, so a slow
+// client delays nobody else. A client whose position has been overwritten or skipped by a reload, or who
+// resumes from a version ahead of this run, gets a resync event and has to fetch the topology again.
+@Service
+public class TopologyEventService {
+
+    static final String DEVICE_ADDED = "device-added";
+    static final String RESYNC = "resync";
+
+    private final AtomicReferenceArray<TopologyEvent> ring;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean dispatchPending = new AtomicBoolean();
+    private volatile long lastSequence;
+
+    public TopologyEventService(DeviceTopologyIndex topologyIndex, DeviceProperties deviceProperties) {
+        this.ring = new AtomicReferenceArray<>(deviceProperties.getEvents().getBufferSize());
+        this.lastSequence = topologyIndex.version();
+        topologyIndex.addListener(new DeviceTopologyIndex.Listener() {
+            @Override
+            public void deviceAdded(long version, long macAddress, DeviceType deviceType, long uplinkMacAddress) {
+                publish(version, macAddress, deviceType, uplinkMacAddress);
+            }
+
+            @Override
+            public void reloaded(long version) {
+                // the versions in between have no events, subscribers behind it run into the gap and resync
+                lastSequence = version;
+                dispatch();
+            }
+        });
+    }
+
+    // resumes after the given sequence, or starts at the current version without one
+    public SseEmitter subscribe(Long lastSequence) {
+        SseEmitter emitter = new SseEmitter(0L);
+        Subscriber subscriber = new Subscriber(emitter, (lastSequence == null ? this.lastSequence : lastSequence) + 1);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(exception -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        subscriber.schedule();
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @PreDestroy
+    public void close() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        executor.shutdownNow();
+    }
+
+    // called under the index write lock, in version order
+    private void publish(long version, long macAddress, DeviceType deviceType, long uplinkMacAddress) {
+        ring.set(slotOf(version), TopologyEvent.builder()
+                .sequence(version)
+                .deviceType(deviceType)
+                .macAddress(MacAddress.toString(macAddress))
+                .uplinkMacAddress(uplinkMacAddress == MacAddress.NONE ? null : MacAddress.toString(uplinkMacAddress))
+                .build());
+        lastSequence = version;
+        dispatch();
+    }
+
+    // one dispatch wakes every subscriber for all events published until it runs
+    private void dispatch() {
+        if (!subscribers.isEmpty() && dispatchPending.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                dispatchPending.set(false);
+                subscribers.forEach(Subscriber::schedule);
+            });
+        }
+    }
+
+    private int slotOf(long sequence) {
+        return (int) Math.floorMod(sequence, (long) ring.length());
+    }
+
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private long nextSequence;
+
+        private Subscriber(SseEmitter emitter, long nextSequence) {
+            this.emitter = emitter;
+            this.nextSequence = nextSequence;
+        }
+
+        private void schedule() {
+            if (draining.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        // rechecks after letting go, an event published during the last send would otherwise wait for the next one
+        private void drain() {
+            do {
+                try {
+                    if (!sendPending()) {
+                        return;
+                    }
+                } catch (IOException | IllegalStateException exception) {
+                    subscribers.remove(this);
+                    emitter.completeWithError(exception);
+                    return;
+                } finally {
+                    draining.set(false);
+                }
+            } while (nextSequence <= lastSequence && draining.compareAndSet(false, true));
+        }
+
+        // false once the subscriber has been told to resync
+        private boolean sendPending() throws IOException {
+            long last = lastSequence;
+            if (nextSequence > last + 1) {
+                return resync();
+            }
+            for (; nextSequence <= last; nextSequence++) {
+                TopologyEvent event = ring.get(slotOf(nextSequence));
+                if (event == null || event.getSequence() != nextSequence) {
+                    return resync();
+                }
+                emitter.send(SseEmitter.event()
+                        .id(Long.toString(nextSequence))
+                        .name(DEVICE_ADDED)
+                        .data(event, MediaType.APPLICATION_JSON));
+            }
+            return true;
+        }
+
+        private boolean resync() throws IOException {
+            subscribers.remove(this);
+            emitter.send(SseEmitter.event()
+                    .name(RESYNC)
+                    .data(lastSequence));
+            emitter.complete();
+            return false;
+        }
+    }
+}
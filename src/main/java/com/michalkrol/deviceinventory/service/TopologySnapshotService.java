@@ -0,0 +1,118 @@
+package com.michalkrol.deviceinventory.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.michalkrol.deviceinventory.config.DeviceMetrics;
+import com.michalkrol.deviceinventory.utils.DeviceTopologyIndex;
+import com.michalkrol.deviceinventory.utils.TopologyUtils;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+@Service
+public class TopologySnapshotService {
+
+    public static final String JSON_REPRESENTATION = "json";
+
+    private final DeviceTopologyIndex topologyIndex;
+    private final JsonFactory topologyJsonFactory;
+    private final DeviceMetrics deviceMetrics;
+    // versions restart with the application, the start time keeps ETags of earlier runs from matching
+    private final String eTagPrefix = "W/\"" + Long.toString(System.currentTimeMillis(), 36) + "-";
+    private final Lock refreshLock = new ReentrantLock();
+    private volatile TopologySnapshot snapshot;
+
+    public TopologySnapshotService(DeviceTopologyIndex topologyIndex, JsonFactory topologyJsonFactory,
+                                   DeviceMetrics deviceMetrics) {
+        this.topologyIndex = topologyIndex;
+        this.topologyJsonFactory = topologyJsonFactory;
+        this.deviceMetrics = deviceMetrics;
+    }
+
+    // every representation of the topology, a format and an optional content encoding, gets its own ETag
+    public String getCurrentETag(String representation) {
+        return toETag(topologyIndex.version(), representation);
+    }
+
+    public TopologySnapshot getTopologySnapshot() {
+        TopologySnapshot current = snapshot;
+        if (current != null && current.version == topologyIndex.version()) {
+            return current;
+        }
+        // concurrent polls after a change wait for a single serialization instead of each doing their own
+        refreshLock.lock();
+        try {
+            current = snapshot;
+            if (current == null || current.version != topologyIndex.version()) {
+                DeviceTopologyIndex.View view = topologyIndex.view();
+                current = deviceMetrics.recordTopologySnapshot(() -> serialize(view));
+                snapshot = current;
+            }
+            return current;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private TopologySnapshot serialize(DeviceTopologyIndex.View view) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (JsonGenerator generator = topologyJsonFactory.createGenerator(outputStream)) {
+            TopologyUtils.writeDeviceTopology(generator, view);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return new TopologySnapshot(view.version(), toETag(view.version(), JSON_REPRESENTATION), outputStream.toByteArray());
+    }
+
+    private String toETag(long version, String representation) {
+        return eTagPrefix + version + "-" + representation + "\"";
+    }
+
+    public static final class TopologySnapshot {
+
+        private final long version;
+        private final String eTag;
+        private final byte[] json;
+        // not synchronized, a virtual thread would stay pinned to its carrier while compressing
+        private final Lock gzipLock = new ReentrantLock();
+        private byte[] gzippedJson;
+
+        private TopologySnapshot(long version, String eTag, byte[] json) {
+            this.version = version;
+            this.eTag = eTag;
+            this.json = json;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        // compressed on first demand, clients without gzip support never pay for it
+        public byte[] getGzippedJson() {
+            gzipLock.lock();
+            try {
+                if (gzippedJson == null) {
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream(json.length / 8);
+                    try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+                        gzipOutputStream.write(json);
+                    } catch (IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                    gzippedJson = outputStream.toByteArray();
+                }
+                return gzippedJson;
+            } finally {
+                gzipLock.unlock();
+            }
+        }
+    }
+}
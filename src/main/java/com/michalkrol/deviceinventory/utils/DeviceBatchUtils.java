@@ -0,0 +1,200 @@
+package com.michalkrol.deviceinventory.utils;
+
+import static com.michalkrol.deviceinventory.utils.DeviceTopologyIndex.NO_SLOT;
+
+import com.michalkrol.deviceinventory.exception.DeviceInventoryException;
+import com.michalkrol.deviceinventory.exception.DeviceInventoryException.Rule;
+import com.michalkrol.deviceinventory.model.BulkRegistrationError;
+import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.validation.MacAddressValidator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DeviceBatchUtils {
+
+    private static final int NOT_IN_BATCH = -1;
+
+    public record DeviceBatch(List<Device> devices, List<BulkRegistrationError> errors) {
+    }
+
+    // Validates all devices against the index and against each other; accepted devices are returned
+    // uplinks first, so every device can be persisted and indexed after the device it links to.
+    public static DeviceBatch prepareBatch(List<Device> devices, DeviceTopologyIndex topologyIndex, boolean lenient) {
+        return topologyIndex.read(() -> {
+            int size = devices.size();
+            long[] macAddresses = new long[size];
+            long[] uplinkMacAddresses = new long[size];
+            String[] errors = new String[size];
+            LongIntHashMap batchIndexes = new LongIntHashMap(size, NOT_IN_BATCH);
+
+            for (int i = 0; i < size; i++) {
+                errors[i] = parseDevice(devices.get(i), i, macAddresses, uplinkMacAddresses, lenient);
+                if (errors[i] == null) {
+                    if (topologyIndex.contains(macAddresses[i]) || batchIndexes.containsKey(macAddresses[i])) {
+                        errors[i] = "A Device with MAC address " + MacAddress.toString(macAddresses[i])
+                                + " already exists.";
+                    } else {
+                        batchIndexes.put(macAddresses[i], i);
+                    }
+                }
+            }
+
+            int[] firstLinked = new int[size];
+            int[] nextLinked = new int[size];
+            Arrays.fill(firstLinked, NOT_IN_BATCH);
+            int[] queue = new int[size];
+            int queueTail = 0;
+            for (int i = size - 1; i >= 0; i--) {
+                int uplinkIndex = errors[i] == null ? batchIndexes.get(uplinkMacAddresses[i]) : NOT_IN_BATCH;
+                if (uplinkIndex != NOT_IN_BATCH) {
+                    nextLinked[i] = firstLinked[uplinkIndex];
+                    firstLinked[uplinkIndex] = i;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                if (errors[i] == null && batchIndexes.get(uplinkMacAddresses[i]) == NOT_IN_BATCH) {
+                    queue[queueTail++] = i;
+                }
+            }
+            for (int i = 0; i < queueTail; i++) {
+                errors[queue[i]] = checkAgainstInventory(queue[i], macAddresses, uplinkMacAddresses, topologyIndex);
+            }
+
+            // breadth first from the devices linked to the existing inventory; a rejected uplink rejects its subtree
+            boolean[] reached = new boolean[size];
+            int[] inventoryUplinks = new int[size];
+            for (int i = 0; i < queueTail; i++) {
+                reached[queue[i]] = true;
+                inventoryUplinks[queue[i]] = queue[i];
+            }
+            List<Device> accepted = new ArrayList<>(size);
+            for (int queueHead = 0; queueHead < queueTail; queueHead++) {
+                int current = queue[queueHead];
+                if (errors[current] == null) {
+                    Device device = devices.get(current);
+                    device.setMacAddress(MacAddress.toString(macAddresses[current]));
+                    device.setUplinkMacAddress(MacAddress.toString(uplinkMacAddresses[current]));
+                    accepted.add(device);
+                }
+                for (int linked = firstLinked[current]; linked != NOT_IN_BATCH; linked = nextLinked[linked]) {
+                    reached[linked] = true;
+                    inventoryUplinks[linked] = inventoryUplinks[current];
+                    queue[queueTail++] = linked;
+                    if (errors[current] != null) {
+                        errors[linked] = "A Device with MAC address " + MacAddress.toString(uplinkMacAddresses[linked])
+                                + " does not exist.";
+                    } else if (DeviceType.ACCESS_POINT.equals(devices.get(current).getDeviceType())) {
+                        errors[linked] = "An Access Point is supposed to connect wireless Devices.";
+                    } else if (topologyIndex.slotOfMacAddress(macAddresses[linked]) != NO_SLOT) {
+                        errors[linked] = checkNoCycle(macAddresses[linked],
+                                uplinkMacAddresses[inventoryUplinks[linked]], topologyIndex);
+                    }
+                }
+            }
+
+            List<BulkRegistrationError> batchErrors = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                if (errors[i] == null && !reached[i]) {
+                    errors[i] = "Linking " + MacAddress.toString(macAddresses[i]) + " to "
+                            + MacAddress.toString(uplinkMacAddresses[i]) + " would create a cycle in the topology.";
+                }
+                if (errors[i] != null) {
+                    batchErrors.add(BulkRegistrationError.builder()
+                            .index(i)
+                            .macAddress(devices.get(i).getMacAddress())
+                            .message(errors[i])
+                            .build());
+                }
+            }
+            return new DeviceBatch(accepted, batchErrors);
+        });
+    }
+
+    // Checks a whole seed inventory in one linear pass plus the cycle check and normalizes its MAC addresses;
+    // unlike a batch, a seed may contain roots and fails as a whole on its first invalid device.
+    public static void validateSeed(List<Device> devices, boolean lenient) {
+        LongIntHashMap seedIndexes = new LongIntHashMap(devices.size(), NOT_IN_BATCH);
+        for (int i = 0; i < devices.size(); i++) {
+            Device device = devices.get(i);
+            long macAddress;
+            try {
+                macAddress = MacAddressValidator.parseMacAddress(device.getMacAddress(), lenient);
+                device.setMacAddress(MacAddress.toString(macAddress));
+                String uplinkMacAddress = device.getUplinkMacAddress();
+                if (uplinkMacAddress != null && !uplinkMacAddress.isEmpty()) {
+                    long uplink = MacAddressValidator.parseMacAddress(uplinkMacAddress, lenient);
+                    if (uplink == macAddress) {
+                        throw new DeviceInventoryException(Rule.SELF_UPLINK,
+                                "MAC address must be different from the uplink MAC address");
+                    }
+                    device.setUplinkMacAddress(MacAddress.toString(uplink));
+                } else {
+                    device.setUplinkMacAddress(null);
+                }
+            } catch (DeviceInventoryException exception) {
+                throw new DeviceInventoryException(exception.getRule(), "Seed device " + (i + 1) + ": "
+                        + exception.getMessage());
+            }
+            if (seedIndexes.containsKey(macAddress)) {
+                throw new DeviceInventoryException(Rule.DUPLICATE, "Seed device " + (i + 1)
+                        + ": A Device with MAC address " + device.getMacAddress() + " already exists.");
+            }
+            seedIndexes.put(macAddress, i);
+        }
+
+        DeviceTopologyIndex seedIndex = DeviceTopologyIndex.of(devices);
+        for (int i = 0; i < devices.size(); i++) {
+            String uplinkMacAddress = devices.get(i).getUplinkMacAddress();
+            if (uplinkMacAddress != null) {
+                try {
+                    TopologyUtils.checkUplinkConnection(MacAddress.parse(uplinkMacAddress), seedIndex);
+                } catch (DeviceInventoryException exception) {
+                    throw new DeviceInventoryException(exception.getRule(), "Seed device " + (i + 1) + ": "
+                        + exception.getMessage());
+                }
+            }
+        }
+        TopologyUtils.validateNoCycles(seedIndex);
+    }
+
+    private static String parseDevice(Device device, int index, long[] macAddresses, long[] uplinkMacAddresses,
+                                      boolean lenient) {
+        try {
+            macAddresses[index] = MacAddressValidator.parseMacAddress(device.getMacAddress(), lenient);
+            uplinkMacAddresses[index] = MacAddressValidator.parseMacAddress(device.getUplinkMacAddress(), lenient);
+        } catch (DeviceInventoryException exception) {
+            return exception.getMessage();
+        }
+        if (macAddresses[index] == uplinkMacAddresses[index]) {
+            return "MAC address must be different from the uplink MAC address";
+        }
+        return null;
+    }
+
+    private static String checkAgainstInventory(int index, long[] macAddresses, long[] uplinkMacAddresses,
+                                                DeviceTopologyIndex topologyIndex) {
+        MacAddress uplinkMacAddress = new MacAddress(uplinkMacAddresses[index]);
+        try {
+            TopologyUtils.checkUplinkMacAddressExistence(uplinkMacAddress, topologyIndex);
+            TopologyUtils.checkUplinkConnection(uplinkMacAddress, topologyIndex);
+        } catch (DeviceInventoryException exception) {
+            return exception.getMessage();
+        }
+        return checkNoCycle(macAddresses[index], uplinkMacAddresses[index], topologyIndex);
+    }
+
+    private static String checkNoCycle(long macAddress, long inventoryUplinkMacAddress,
+                                       DeviceTopologyIndex topologyIndex) {
+        try {
+            TopologyUtils.checkNoCycle(new MacAddress(macAddress), new MacAddress(inventoryUplinkMacAddress),
+                    topologyIndex);
+        } catch (DeviceInventoryException exception) {
+            return exception.getMessage();
+        }
+        return null;
+    }
+}
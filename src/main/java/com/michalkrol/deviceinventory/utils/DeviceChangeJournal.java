@@ -0,0 +1,125 @@
+package com.michalkrol.deviceinventory.utils;
+
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.model.TopologyEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Append-only record of added devices, numbered by consecutive sequences. Changes are kept in fixed size
+// segments of packed columns, compaction drops whole segments from the front once more than the retained
+// number of changes has been recorded.
+public class DeviceChangeJournal {
+
+    static final int SEGMENT_SIZE = 4096;
+
+    private static final byte NO_DEVICE_TYPE = -1;
+    private static final DeviceType[] DEVICE_TYPES = DeviceType.values();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Segment> segments = new ArrayList<>();
+    private final int retainedSegments;
+    // sequence of the last change before the first retained one
+    private long baseSequence;
+    private long lastSequence;
+
+    public DeviceChangeJournal(int retention) {
+        if (retention < 1) {
+            throw new IllegalArgumentException("The retention must be at least one change.");
+        }
+        // one extra segment, so that at least the retained number of changes stays readable
+        retainedSegments = (retention + SEGMENT_SIZE - 1) / SEGMENT_SIZE + 1;
+    }
+
+    // a sequence that does not follow the last one starts over, the changes in between are unknown
+    public void append(long sequence, long macAddress, DeviceType deviceType, long uplinkMacAddress) {
+        lock.writeLock().lock();
+        try {
+            if (sequence != lastSequence + 1) {
+                resetLocked(sequence - 1);
+            }
+            Segment segment = segments.isEmpty() ? null : segments.getLast();
+            if (segment == null || segment.size == SEGMENT_SIZE) {
+                segment = new Segment();
+                segments.add(segment);
+                if (segments.size() > retainedSegments) {
+                    segments.removeFirst();
+                    baseSequence += SEGMENT_SIZE;
+                }
+            }
+            segment.macAddresses[segment.size] = macAddress;
+            segment.uplinkMacAddresses[segment.size] = uplinkMacAddress;
+            segment.deviceTypes[segment.size] = deviceType == null ? NO_DEVICE_TYPE : (byte) deviceType.ordinal();
+            segment.size++;
+            lastSequence = sequence;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // drops all changes, the next one is expected right after the given sequence
+    public void reset(long sequence) {
+        lock.writeLock().lock();
+        try {
+            resetLocked(sequence);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void resetLocked(long sequence) {
+        segments.clear();
+        baseSequence = sequence;
+        lastSequence = sequence;
+    }
+
+    public long lastSequence() {
+        lock.readLock().lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // up to limit changes after the given sequence, null when they have been compacted or were never recorded
+    public List<TopologyEvent> read(long since, int limit) {
+        lock.readLock().lock();
+        try {
+            if (since < baseSequence || since > lastSequence) {
+                return null;
+            }
+            int count = (int) Math.min(limit, lastSequence - since);
+            List<TopologyEvent> changes = new ArrayList<>(count);
+            long offset = since - baseSequence;
+            for (int i = 0; i < count; i++, offset++) {
+                Segment segment = segments.get((int) (offset / SEGMENT_SIZE));
+                int position = (int) (offset % SEGMENT_SIZE);
+                long uplinkMacAddress = segment.uplinkMacAddresses[position];
+                byte deviceType = segment.deviceTypes[position];
+                changes.add(TopologyEvent.builder()
+                        .sequence(baseSequence + offset + 1)
+                        .deviceType(deviceType == NO_DEVICE_TYPE ? null : DEVICE_TYPES[deviceType])
+                        .macAddress(MacAddress.toString(segment.macAddresses[position]))
+                        .uplinkMacAddress(uplinkMacAddress == MacAddress.NONE
+                                ? null
+                                : MacAddress.toString(uplinkMacAddress))
+                        .build());
+            }
+            return changes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static final class Segment {
+
+        private final long[] macAddresses = new long[SEGMENT_SIZE];
+        private final long[] uplinkMacAddresses = new long[SEGMENT_SIZE];
+        private final byte[] deviceTypes = new byte[SEGMENT_SIZE];
+        private int size;
+    }
+}
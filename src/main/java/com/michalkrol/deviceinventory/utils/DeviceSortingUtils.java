@@ -1,28 +1,21 @@
 package com.michalkrol.deviceinventory.utils;
 
-import static com.michalkrol.deviceinventory.model.DeviceType.ACCESS_POINT;
-import static com.michalkrol.deviceinventory.model.DeviceType.GATEWAY;
-import static com.michalkrol.deviceinventory.model.DeviceType.SWITCH;
-
 import com.michalkrol.deviceinventory.model.Device;
-import com.michalkrol.deviceinventory.model.DeviceType;
 
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 
 public class DeviceSortingUtils {
 
-    private static final Map<DeviceType, Integer> DEVICE_TYPE_PRIORITY = Map.of(
-            GATEWAY, 1,
-            SWITCH, 2,
-            ACCESS_POINT, 3
-    );
+    // the declaration order of DeviceType is the priority, devices without a type come last; canonical
+    // MAC addresses have a fixed width, so comparing them as strings is comparing their values
+    public static final Comparator<Device> DEVICE_ORDER = Comparator
+            .comparingInt((Device device) -> device.getDeviceType() == null
+                    ? Integer.MAX_VALUE
+                    : device.getDeviceType().ordinal())
+            .thenComparing(Device::getMacAddress);
 
     public static void sortDevices(List<Device> devices) {
-        devices.sort(
-                Comparator.comparingInt((Device device) -> DEVICE_TYPE_PRIORITY.get(device.getDeviceType()))
-                        .thenComparing(Device::getMacAddress)
-        );
+        devices.sort(DEVICE_ORDER);
     }
 }
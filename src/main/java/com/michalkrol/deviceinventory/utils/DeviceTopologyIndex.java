@@ -0,0 +1,990 @@
+package com.michalkrol.deviceinventory.utils;
+
+import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+@Component
+public class DeviceTopologyIndex {
+
+    static final int NO_SLOT = -1;
+
+    // told about every device added one by one, a load or restore only reports the version it ends at;
+    // called under the write lock, so it has to hand the change over without blocking
+    public interface Listener {
+        void deviceAdded(long version, long macAddress, DeviceType deviceType, long uplinkMacAddress);
+
+        void reloaded(long version);
+    }
+
+    private static final byte NO_DEVICE_TYPE = -1;
+    private static final byte UNKNOWN_DEVICE_TYPE = -2;
+    private static final int INITIAL_CAPACITY = 16;
+    // deeper ancestors are not updated on insert, the rest of the chain is settled by the next aggregates read
+    private static final int MAX_INCREMENTAL_DEPTH = 64;
+    // A device added later gets at most this many label units of its uplink, and a subtree is only relabeled
+    // within its own interval while that leaves at least MIN_LABEL_UNIT between labels. Past RELABEL_BUDGET
+    // relabeled slots per slot since the last full relabel, rebuilding all labels is cheaper.
+    private static final long ADDED_LABEL_UNITS = 4;
+    private static final long MIN_LABEL_UNIT = 64;
+    private static final long RELABEL_BUDGET = 4;
+    private static final DeviceType[] DEVICE_TYPES = DeviceType.values();
+    private static final int TYPE_COUNT = DEVICE_TYPES.length;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Every device (and every uplink referenced before its device is known) owns a slot;
+    // linked devices of a slot form a singly linked list through nextLinkedSlots.
+    private final LongIntHashMap slotsByMacAddress = new LongIntHashMap(NO_SLOT);
+    private long[] macAddresses = new long[INITIAL_CAPACITY];
+    private byte[] deviceTypes = new byte[INITIAL_CAPACITY];
+    private int[] uplinkSlots = new int[INITIAL_CAPACITY];
+    private int[] firstLinkedSlots = new int[INITIAL_CAPACITY];
+    private int[] lastLinkedSlots = new int[INITIAL_CAPACITY];
+    private int[] nextLinkedSlots = new int[INITIAL_CAPACITY];
+    // roots in slot order, doubly linked so a placeholder can leave the list once it gets an uplink
+    private int[] nextRootSlots = new int[INITIAL_CAPACITY];
+    private int[] previousRootSlots = new int[INITIAL_CAPACITY];
+    private int firstRootSlot = NO_SLOT;
+    private int lastRootSlot = NO_SLOT;
+    private int[] descendantCounts = new int[INITIAL_CAPACITY];
+    // descendants per device type, TYPE_COUNT entries per slot
+    private int[] typedDescendantCounts = new int[INITIAL_CAPACITY * TYPE_COUNT];
+    private int[] heights = new int[INITIAL_CAPACITY];
+    // devices with descendants ordered by their count, see rankingKey()
+    private final TreeSet<Long> subtreeRanking = new TreeSet<>();
+    private volatile boolean aggregatesStale;
+    // Updates cut off at MAX_INCREMENTAL_DEPTH: the ancestor to continue at, the descendants and descendants per
+    // type to add from there on and the height they reach at it. Past a share of the slot count a recompute
+    // is cheaper than settling them one by one.
+    private int[] pendingAncestorSlots = new int[INITIAL_CAPACITY];
+    private int[] pendingDescendantCounts = new int[INITIAL_CAPACITY];
+    private int[] pendingTypedDescendantCounts = new int[INITIAL_CAPACITY * TYPE_COUNT];
+    private int[] pendingHeights = new int[INITIAL_CAPACITY];
+    private int pendingAncestorCount;
+    private final int[] addedTypedDescendantCounts = new int[TYPE_COUNT];
+    // skew binary jump pointers, a compact form of binary lifting: one jump per slot, O(log depth) to any ancestor
+    private int[] depths = new int[INITIAL_CAPACITY];
+    private int[] jumpSlots = new int[INITIAL_CAPACITY];
+    private volatile boolean ancestryStale;
+    // Nested pre/post order labels with gaps, so a linked device appended later still fits inside its uplink's
+    // interval.
+    private long[] enterLabels = new long[INITIAL_CAPACITY];
+    private long[] exitLabels = new long[INITIAL_CAPACITY];
+    private long rootLabelEnd;
+    // distance between root labels after the last full relabel, and between the labels below each slot;
+    // an index that was never relabeled has room for 2^29 roots added one by one
+    private long labelUnit = 1L << 32;
+    private long[] labelUnits = new long[INITIAL_CAPACITY];
+    private long relabeledSlots;
+    private volatile boolean intervalsStale;
+    private int slotCount;
+    private int deviceCount;
+    // set once a View shares the arrays, see detachViews()
+    private volatile boolean viewed;
+    private volatile boolean loaded;
+    // bumped for every registered device and never reset, so equal versions mean equal content
+    private volatile long version;
+
+    public static DeviceTopologyIndex of(List<Device> devices) {
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        topologyIndex.load(devices);
+        return topologyIndex;
+    }
+
+    public void load(List<Device> devices) {
+        lock.writeLock().lock();
+        try {
+            slotsByMacAddress.clear();
+            subtreeRanking.clear();
+            // fresh arrays rather than reused ones, so views taken before the reload stay consistent
+            allocate(Math.max(INITIAL_CAPACITY, devices.size()));
+            slotCount = 0;
+            deviceCount = 0;
+            firstRootSlot = NO_SLOT;
+            lastRootSlot = NO_SLOT;
+            aggregatesStale = true;
+            pendingAncestorCount = 0;
+            ancestryStale = true;
+            intervalsStale = true;
+            devices.forEach(this::put);
+            loaded = true;
+            notifyReloaded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Takes over slots written by TopologyCheckpoint. They come in breadth first order, so every uplink
+    // precedes its linked devices and appending them one by one restores the original link order.
+    void restore(long[] macAddresses, byte[] deviceTypes, int[] uplinkSlots, int count) {
+        lock.writeLock().lock();
+        try {
+            slotsByMacAddress.clear();
+            subtreeRanking.clear();
+            allocate(Math.max(INITIAL_CAPACITY, count));
+            System.arraycopy(macAddresses, 0, this.macAddresses, 0, count);
+            System.arraycopy(deviceTypes, 0, this.deviceTypes, 0, count);
+            slotCount = count;
+            deviceCount = 0;
+            firstRootSlot = NO_SLOT;
+            lastRootSlot = NO_SLOT;
+            aggregatesStale = true;
+            pendingAncestorCount = 0;
+            ancestryStale = true;
+            intervalsStale = true;
+            Arrays.fill(firstLinkedSlots, 0, count, NO_SLOT);
+            Arrays.fill(lastLinkedSlots, 0, count, NO_SLOT);
+            Arrays.fill(nextLinkedSlots, 0, count, NO_SLOT);
+            for (int slot = 0; slot < count; slot++) {
+                slotsByMacAddress.put(macAddresses[slot], slot);
+                if (isDevice(slot)) {
+                    deviceCount++;
+                }
+                if (uplinkSlots[slot] == NO_SLOT) {
+                    this.uplinkSlots[slot] = NO_SLOT;
+                    appendRoot(slot);
+                } else {
+                    appendLinked(uplinkSlots[slot], slot);
+                }
+            }
+            version += deviceCount;
+            loaded = true;
+            notifyReloaded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void add(Device device) {
+        lock.writeLock().lock();
+        try {
+            putNotifying(device);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addAll(List<Device> devices) {
+        lock.writeLock().lock();
+        try {
+            devices.forEach(this::putNotifying);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void add(long macAddress, DeviceType deviceType, long uplinkMacAddress) {
+        lock.writeLock().lock();
+        try {
+            putNotifying(macAddress, deviceType, uplinkMacAddress);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(Device device) {
+        put(MacAddress.toLong(device.getMacAddress()), device.getDeviceType(), uplinkMacAddressOf(device));
+    }
+
+    private void putNotifying(Device device) {
+        putNotifying(MacAddress.toLong(device.getMacAddress()), device.getDeviceType(), uplinkMacAddressOf(device));
+    }
+
+    private void putNotifying(long macAddress, DeviceType deviceType, long uplinkMacAddress) {
+        long previousVersion = version;
+        put(macAddress, deviceType, uplinkMacAddress);
+        if (version != previousVersion) {
+            for (Listener listener : listeners) {
+                listener.deviceAdded(version, macAddress, deviceType, uplinkMacAddress);
+            }
+        }
+    }
+
+    private void notifyReloaded() {
+        for (Listener listener : listeners) {
+            listener.reloaded(version);
+        }
+    }
+
+    private static long uplinkMacAddressOf(Device device) {
+        String uplinkMacAddress = device.getUplinkMacAddress();
+        return uplinkMacAddress == null || uplinkMacAddress.isEmpty()
+                ? MacAddress.NONE
+                : MacAddress.toLong(uplinkMacAddress);
+    }
+
+    private void put(long macAddress, DeviceType deviceType, long uplinkMacAddress) {
+        int previousSlotCount = slotCount;
+        int slot = slotOf(macAddress);
+        if (deviceTypes[slot] != NO_DEVICE_TYPE) {
+            return;
+        }
+        if (slot < previousSlotCount) {
+            // a placeholder turns into a device in place, which views taken before must not see
+            detachViews();
+        }
+        // a placeholder is a root as long as it has no uplink
+        boolean wasRoot = firstLinkedSlots[slot] != NO_SLOT;
+        deviceCount++;
+        version++;
+        deviceTypes[slot] = deviceType == null ? UNKNOWN_DEVICE_TYPE : (byte) deviceType.ordinal();
+        if (wasRoot && !aggregatesStale) {
+            subtreeRanking.add(rankingKey(slot));
+        }
+
+        if (uplinkMacAddress == MacAddress.NONE) {
+            if (!wasRoot) {
+                appendRoot(slot);
+            }
+            return;
+        }
+        if (wasRoot) {
+            removeRoot(slot);
+            // the whole subtree of the placeholder moves down
+            ancestryStale = true;
+            intervalsStale = true;
+        }
+        int uplinkSlot = slotOf(uplinkMacAddress);
+        if (deviceTypes[uplinkSlot] == NO_DEVICE_TYPE && firstLinkedSlots[uplinkSlot] == NO_SLOT) {
+            appendRoot(uplinkSlot);
+        }
+        int lastLinkedSlot = lastLinkedSlots[uplinkSlot];
+        appendLinked(uplinkSlot, slot);
+        if (!intervalsStale && !assignInterval(slot,
+                lastLinkedSlot == NO_SLOT ? enterLabels[uplinkSlot] : exitLabels[lastLinkedSlot],
+                exitLabels[uplinkSlot], labelUnits[uplinkSlot])) {
+            relabelAround(uplinkSlot);
+        }
+        addToAncestors(uplinkSlot, slot);
+        if (!ancestryStale) {
+            linkAncestry(slot, uplinkSlot);
+        }
+    }
+
+    // Copy on write: the first promotion after a view was taken moves the index to copies of the arrays the
+    // view reads, later ones write to those copies until the next view.
+    private void detachViews() {
+        if (!viewed) {
+            return;
+        }
+        deviceTypes = deviceTypes.clone();
+        uplinkSlots = uplinkSlots.clone();
+        firstLinkedSlots = firstLinkedSlots.clone();
+        nextLinkedSlots = nextLinkedSlots.clone();
+        viewed = false;
+    }
+
+    private void appendLinked(int uplinkSlot, int slot) {
+        uplinkSlots[slot] = uplinkSlot;
+        if (lastLinkedSlots[uplinkSlot] == NO_SLOT) {
+            firstLinkedSlots[uplinkSlot] = slot;
+        } else {
+            nextLinkedSlots[lastLinkedSlots[uplinkSlot]] = slot;
+        }
+        lastLinkedSlots[uplinkSlot] = slot;
+    }
+
+    // the jump skips twice as far as the uplink's jump whenever the uplink's two previous jumps were equally long
+    private void linkAncestry(int slot, int uplinkSlot) {
+        int uplinkJumpSlot = jumpSlots[uplinkSlot];
+        depths[slot] = depths[uplinkSlot] + 1;
+        jumpSlots[slot] = depths[uplinkSlot] - depths[uplinkJumpSlot] == depths[uplinkJumpSlot] - depths[jumpSlots[uplinkJumpSlot]]
+                ? jumpSlots[uplinkJumpSlot]
+                : uplinkSlot;
+    }
+
+    // Takes a quarter of the free gap, but no more than ADDED_LABEL_UNITS, which leaves room for both the
+    // device's own linked devices and its later siblings; false once the gap has run out.
+    private boolean assignInterval(int slot, long freeFrom, long freeTo, long unit) {
+        long length = Math.min((freeTo - freeFrom) / 4, ADDED_LABEL_UNITS * unit);
+        if (length < 2) {
+            return false;
+        }
+        enterLabels[slot] = freeFrom + 1;
+        exitLabels[slot] = freeFrom + length;
+        labelUnits[slot] = Math.max(1, length / (2 * ADDED_LABEL_UNITS));
+        return true;
+    }
+
+    // Relabels the subtree of the nearest ancestor whose interval still holds it at MIN_LABEL_UNIT, twice
+    // that for every level walked up, so a relabel that had to reach further up also leaves room for more
+    // levels below. Only the subtrees not counted yet are counted on the way up; all labels are rebuilt on
+    // the next read if no ancestor qualifies or the relabel budget is spent.
+    private void relabelAround(int uplinkSlot) {
+        int slot = uplinkSlot;
+        long descendants = countDescendants(slot);
+        long minUnit = MIN_LABEL_UNIT;
+        while ((exitLabels[slot] - enterLabels[slot]) / (7 * descendants + 3) < minUnit) {
+            int parentSlot = uplinkSlots[slot];
+            if (parentSlot == NO_SLOT || relabeledSlots + descendants > RELABEL_BUDGET * slotCount) {
+                intervalsStale = true;
+                return;
+            }
+            for (int linkedSlot = firstLinkedSlots[parentSlot]; linkedSlot != NO_SLOT;
+                 linkedSlot = nextLinkedSlots[linkedSlot]) {
+                if (linkedSlot != slot) {
+                    descendants += countDescendants(linkedSlot) + 1;
+                }
+            }
+            descendants++;
+            slot = parentSlot;
+            minUnit = Math.min(minUnit << 1, Long.MAX_VALUE >> 1);
+        }
+        // labelSubtrees() takes at most 5 units per descendant, the rest is left to the slot's later linked devices
+        relabeledSlots += descendants;
+        if (relabeledSlots > RELABEL_BUDGET * slotCount) {
+            intervalsStale = true;
+            return;
+        }
+        long unit = (exitLabels[slot] - enterLabels[slot]) / (7 * descendants + 3);
+        labelUnits[slot] = unit;
+        labelSubtrees(firstLinkedSlots[slot], nextLinkedSlots, enterLabels[slot], unit);
+    }
+
+    private int countDescendants(int slot) {
+        int count = 0;
+        int[] pendingSlots = new int[16];
+        pendingSlots[0] = firstLinkedSlots[slot];
+        int depth = 1;
+        while (depth > 0) {
+            int linkedSlot = pendingSlots[depth - 1];
+            if (linkedSlot == NO_SLOT) {
+                depth--;
+                continue;
+            }
+            count++;
+            pendingSlots[depth - 1] = nextLinkedSlots[linkedSlot];
+            if (depth == pendingSlots.length) {
+                pendingSlots = Arrays.copyOf(pendingSlots, depth << 1);
+            }
+            pendingSlots[depth++] = firstLinkedSlots[linkedSlot];
+        }
+        return count;
+    }
+
+    private void appendRoot(int slot) {
+        if (!intervalsStale) {
+            if (assignInterval(slot, rootLabelEnd, Long.MAX_VALUE, labelUnit)) {
+                rootLabelEnd = exitLabels[slot];
+            } else {
+                intervalsStale = true;
+            }
+        }
+        nextRootSlots[slot] = NO_SLOT;
+        previousRootSlots[slot] = lastRootSlot;
+        if (lastRootSlot == NO_SLOT) {
+            firstRootSlot = slot;
+        } else {
+            nextRootSlots[lastRootSlot] = slot;
+        }
+        lastRootSlot = slot;
+    }
+
+    private void removeRoot(int slot) {
+        if (previousRootSlots[slot] == NO_SLOT) {
+            firstRootSlot = nextRootSlots[slot];
+        } else {
+            nextRootSlots[previousRootSlots[slot]] = nextRootSlots[slot];
+        }
+        if (nextRootSlots[slot] == NO_SLOT) {
+            lastRootSlot = previousRootSlots[slot];
+        } else {
+            previousRootSlots[nextRootSlots[slot]] = previousRootSlots[slot];
+        }
+    }
+
+    // adds the newly linked slot and everything below it to each ancestor, starting at its uplink
+    private void addToAncestors(int slot, int linkedSlot) {
+        if (aggregatesStale) {
+            return;
+        }
+        int descendants = descendantCounts[linkedSlot] + 1;
+        int height = heights[linkedSlot] + 1;
+        System.arraycopy(typedDescendantCounts, linkedSlot * TYPE_COUNT, addedTypedDescendantCounts, 0, TYPE_COUNT);
+        if (deviceTypes[linkedSlot] >= 0) {
+            addedTypedDescendantCounts[deviceTypes[linkedSlot]]++;
+        }
+        int cutOffSlot = addToChain(slot, descendants, addedTypedDescendantCounts, 0, height, MAX_INCREMENTAL_DEPTH);
+        if (cutOffSlot != NO_SLOT) {
+            deferToAncestors(cutOffSlot, descendants, height + MAX_INCREMENTAL_DEPTH);
+        }
+    }
+
+    // adds to the slot and its ancestors, returns the ancestor it stopped at after maxSlots or NO_SLOT
+    private int addToChain(int slot, int descendants, int[] typedCounts, int typedOffset, int height, int maxSlots) {
+        for (int updated = 0; slot != NO_SLOT; slot = uplinkSlots[slot], updated++, height++) {
+            if (updated == maxSlots) {
+                return slot;
+            }
+            boolean ranked = isDevice(slot) && descendantCounts[slot] > 0;
+            if (ranked) {
+                subtreeRanking.remove(rankingKey(slot));
+            }
+            descendantCounts[slot] += descendants;
+            for (int type = 0; type < TYPE_COUNT; type++) {
+                typedDescendantCounts[slot * TYPE_COUNT + type] += typedCounts[typedOffset + type];
+            }
+            heights[slot] = Math.max(heights[slot], height);
+            if (isDevice(slot)) {
+                subtreeRanking.add(rankingKey(slot));
+            }
+        }
+        return NO_SLOT;
+    }
+
+    private void deferToAncestors(int slot, int descendants, int height) {
+        if (pendingAncestorCount >= Math.max(MAX_INCREMENTAL_DEPTH, slotCount >> 3)) {
+            aggregatesStale = true;
+            pendingAncestorCount = 0;
+            return;
+        }
+        if (pendingAncestorCount == pendingAncestorSlots.length) {
+            int capacity = pendingAncestorCount << 1;
+            pendingAncestorSlots = Arrays.copyOf(pendingAncestorSlots, capacity);
+            pendingDescendantCounts = Arrays.copyOf(pendingDescendantCounts, capacity);
+            pendingTypedDescendantCounts = Arrays.copyOf(pendingTypedDescendantCounts, capacity * TYPE_COUNT);
+            pendingHeights = Arrays.copyOf(pendingHeights, capacity);
+        }
+        int pending = pendingAncestorCount++;
+        pendingAncestorSlots[pending] = slot;
+        pendingDescendantCounts[pending] = descendants;
+        System.arraycopy(addedTypedDescendantCounts, 0, pendingTypedDescendantCounts, pending * TYPE_COUNT,
+                TYPE_COUNT);
+        pendingHeights[pending] = height;
+    }
+
+    // O(depth) per deferred update, the counts are sums and heights maxima, so the order does not matter
+    private void settlePendingAncestors() {
+        for (int pending = 0; pending < pendingAncestorCount; pending++) {
+            addToChain(pendingAncestorSlots[pending], pendingDescendantCounts[pending], pendingTypedDescendantCounts,
+                    pending * TYPE_COUNT, pendingHeights[pending], Integer.MAX_VALUE);
+        }
+        pendingAncestorCount = 0;
+    }
+
+    private void updateAggregates() {
+        if (aggregatesStale) {
+            recomputeAggregates();
+        } else {
+            settlePendingAncestors();
+        }
+    }
+
+    private void addTypedCounts(int slot, int linkedSlot) {
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            typedDescendantCounts[slot * TYPE_COUNT + type] += typedDescendantCounts[linkedSlot * TYPE_COUNT + type];
+        }
+        if (deviceTypes[linkedSlot] >= 0) {
+            typedDescendantCounts[slot * TYPE_COUNT + deviceTypes[linkedSlot]]++;
+        }
+    }
+
+    // larger subtrees first, equal ones in slot order
+    private long rankingKey(int slot) {
+        return (long) descendantCounts[slot] << 32 | (Integer.MAX_VALUE - slot);
+    }
+
+    // every uplink precedes its linked devices, slots on a cycle are left out
+    private int[] breadthFirstOrder() {
+        int[] order = new int[slotCount];
+        int count = 0;
+        for (int root = firstRootSlot; root != NO_SLOT; root = nextRootSlots[root]) {
+            order[count++] = root;
+        }
+        for (int i = 0; i < count; i++) {
+            for (int linkedSlot = firstLinkedSlots[order[i]]; linkedSlot != NO_SLOT;
+                 linkedSlot = nextLinkedSlots[linkedSlot]) {
+                order[count++] = linkedSlot;
+            }
+        }
+        return Arrays.copyOf(order, count);
+    }
+
+    // children are summed before their uplinks by walking the breadth first order backwards
+    private void recomputeAggregates() {
+        int[] order = breadthFirstOrder();
+        Arrays.fill(descendantCounts, 0, slotCount, 0);
+        Arrays.fill(typedDescendantCounts, 0, slotCount * TYPE_COUNT, 0);
+        Arrays.fill(heights, 0, slotCount, 0);
+        for (int i = order.length - 1; i >= 0; i--) {
+            int slot = order[i];
+            int uplinkSlot = uplinkSlots[slot];
+            if (uplinkSlot != NO_SLOT) {
+                descendantCounts[uplinkSlot] += descendantCounts[slot] + 1;
+                addTypedCounts(uplinkSlot, slot);
+                heights[uplinkSlot] = Math.max(heights[uplinkSlot], heights[slot] + 1);
+            }
+        }
+        subtreeRanking.clear();
+        pendingAncestorCount = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (isDevice(slot) && descendantCounts[slot] > 0) {
+                subtreeRanking.add(rankingKey(slot));
+            }
+        }
+        aggregatesStale = false;
+    }
+
+    private void recomputeAncestry() {
+        for (int slot : breadthFirstOrder()) {
+            if (uplinkSlots[slot] == NO_SLOT) {
+                depths[slot] = 0;
+                jumpSlots[slot] = slot;
+            } else {
+                linkAncestry(slot, uplinkSlots[slot]);
+            }
+        }
+        ancestryStale = false;
+    }
+
+    // Labels are spaced evenly over the lower half of the range, the upper half is left to roots added later.
+    private void recomputeIntervals() {
+        labelUnit = Long.MAX_VALUE / 2 / (5L * slotCount + 2);
+        rootLabelEnd = labelSubtrees(firstRootSlot, nextRootSlots, 0, labelUnit);
+        relabeledSlots = 0;
+        intervalsStale = false;
+    }
+
+    // Labels the slots of a sibling list and everything below them depth first, one unit apart, and leaves
+    // 2 * (linked devices + 1) units before every exit label for devices linked later, so the free room of
+    // an uplink grows with its fan-out; returns the last label.
+    private long labelSubtrees(int firstSlot, int[] nextSlots, long label, long unit) {
+        int[] openSlots = new int[16];
+        int[] pendingSlots = new int[16];
+        int[] linkedCounts = new int[16];
+        for (int topSlot = firstSlot; topSlot != NO_SLOT; topSlot = nextSlots[topSlot]) {
+            enterLabels[topSlot] = label += unit;
+            labelUnits[topSlot] = unit;
+            openSlots[0] = topSlot;
+            pendingSlots[0] = firstLinkedSlots[topSlot];
+            linkedCounts[0] = 0;
+            int depth = 1;
+            while (depth > 0) {
+                int slot = pendingSlots[depth - 1];
+                if (slot == NO_SLOT) {
+                    depth--;
+                    label += 2L * (linkedCounts[depth] + 1) * unit;
+                    exitLabels[openSlots[depth]] = label;
+                    continue;
+                }
+                pendingSlots[depth - 1] = nextLinkedSlots[slot];
+                linkedCounts[depth - 1]++;
+                enterLabels[slot] = label += unit;
+                labelUnits[slot] = unit;
+                if (depth == openSlots.length) {
+                    openSlots = Arrays.copyOf(openSlots, depth << 1);
+                    pendingSlots = Arrays.copyOf(pendingSlots, depth << 1);
+                    linkedCounts = Arrays.copyOf(linkedCounts, depth << 1);
+                }
+                openSlots[depth] = slot;
+                pendingSlots[depth] = firstLinkedSlots[slot];
+                linkedCounts[depth++] = 0;
+            }
+        }
+        return label;
+    }
+
+    private int slotOf(long macAddress) {
+        int slot = slotsByMacAddress.get(macAddress);
+        if (slot != NO_SLOT) {
+            return slot;
+        }
+        if (slotCount == macAddresses.length) {
+            grow(slotCount << 1);
+        }
+        slot = slotCount++;
+        macAddresses[slot] = macAddress;
+        deviceTypes[slot] = NO_DEVICE_TYPE;
+        uplinkSlots[slot] = NO_SLOT;
+        firstLinkedSlots[slot] = NO_SLOT;
+        lastLinkedSlots[slot] = NO_SLOT;
+        nextLinkedSlots[slot] = NO_SLOT;
+        nextRootSlots[slot] = NO_SLOT;
+        previousRootSlots[slot] = NO_SLOT;
+        descendantCounts[slot] = 0;
+        Arrays.fill(typedDescendantCounts, slot * TYPE_COUNT, (slot + 1) * TYPE_COUNT, 0);
+        heights[slot] = 0;
+        depths[slot] = 0;
+        jumpSlots[slot] = slot;
+        slotsByMacAddress.put(macAddress, slot);
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        macAddresses = new long[capacity];
+        deviceTypes = new byte[capacity];
+        uplinkSlots = new int[capacity];
+        firstLinkedSlots = new int[capacity];
+        lastLinkedSlots = new int[capacity];
+        nextLinkedSlots = new int[capacity];
+        nextRootSlots = new int[capacity];
+        previousRootSlots = new int[capacity];
+        descendantCounts = new int[capacity];
+        typedDescendantCounts = new int[capacity * TYPE_COUNT];
+        heights = new int[capacity];
+        depths = new int[capacity];
+        jumpSlots = new int[capacity];
+        enterLabels = new long[capacity];
+        exitLabels = new long[capacity];
+        labelUnits = new long[capacity];
+    }
+
+    private void grow(int capacity) {
+        macAddresses = Arrays.copyOf(macAddresses, capacity);
+        deviceTypes = Arrays.copyOf(deviceTypes, capacity);
+        uplinkSlots = Arrays.copyOf(uplinkSlots, capacity);
+        firstLinkedSlots = Arrays.copyOf(firstLinkedSlots, capacity);
+        lastLinkedSlots = Arrays.copyOf(lastLinkedSlots, capacity);
+        nextLinkedSlots = Arrays.copyOf(nextLinkedSlots, capacity);
+        nextRootSlots = Arrays.copyOf(nextRootSlots, capacity);
+        previousRootSlots = Arrays.copyOf(previousRootSlots, capacity);
+        descendantCounts = Arrays.copyOf(descendantCounts, capacity);
+        typedDescendantCounts = Arrays.copyOf(typedDescendantCounts, capacity * TYPE_COUNT);
+        heights = Arrays.copyOf(heights, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        jumpSlots = Arrays.copyOf(jumpSlots, capacity);
+        enterLabels = Arrays.copyOf(enterLabels, capacity);
+        exitLabels = Arrays.copyOf(exitLabels, capacity);
+        labelUnits = Arrays.copyOf(labelUnits, capacity);
+    }
+
+    public <T> T read(Supplier<T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // like read(), with the subtree aggregates brought up to date first
+    <T> T readAggregates(Supplier<T> reader) {
+        return readRecomputed(() -> aggregatesStale || pendingAncestorCount > 0, this::updateAggregates, reader);
+    }
+
+    // like read(), with depths and jumps brought up to date first
+    <T> T readAncestry(Supplier<T> reader) {
+        return readRecomputed(() -> ancestryStale, this::recomputeAncestry, reader);
+    }
+
+    // like read(), with the interval labels brought up to date first
+    <T> T readIntervals(Supplier<T> reader) {
+        return readRecomputed(() -> intervalsStale, this::recomputeIntervals, reader);
+    }
+
+    private <T> T readRecomputed(BooleanSupplier stale, Runnable recompute, Supplier<T> reader) {
+        lock.readLock().lock();
+        try {
+            if (!stale.getAsBoolean()) {
+                return reader.get();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            if (stale.getAsBoolean()) {
+                recompute.run();
+            }
+            return reader.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        return read(() -> deviceCount);
+    }
+
+    public boolean contains(long macAddress) {
+        return read(() -> isDevice(slotsByMacAddress.get(macAddress)));
+    }
+
+    public Optional<DeviceType> findDeviceType(long macAddress) {
+        return read(() -> {
+            int slot = slotsByMacAddress.get(macAddress);
+            return isDevice(slot) ? Optional.ofNullable(deviceTypeAt(slot)) : Optional.empty();
+        });
+    }
+
+    public Optional<Device> find(long macAddress) {
+        return read(() -> {
+            int slot = slotsByMacAddress.get(macAddress);
+            return isDevice(slot) ? Optional.of(toDevice(slot)) : Optional.empty();
+        });
+    }
+
+    // a MAC address that is referenced as an uplink but not registered itself
+    public boolean isPlaceholder(long macAddress) {
+        return read(() -> {
+            int slot = slotsByMacAddress.get(macAddress);
+            return slot != NO_SLOT && !isDevice(slot);
+        });
+    }
+
+    public long getRootMacAddress(long macAddress) {
+        return read(() -> {
+            int slot = slotsByMacAddress.get(macAddress);
+            if (slot == NO_SLOT) {
+                return macAddress;
+            }
+            for (int steps = 0; uplinkSlots[slot] != NO_SLOT && steps < slotCount; steps++) {
+                slot = uplinkSlots[slot];
+            }
+            return macAddresses[slot];
+        });
+    }
+
+    public long getUplinkMacAddress(long macAddress) {
+        return read(() -> {
+            int slot = slotsByMacAddress.get(macAddress);
+            return slot == NO_SLOT || uplinkSlots[slot] == NO_SLOT ? MacAddress.NONE : macAddresses[uplinkSlots[slot]];
+        });
+    }
+
+    public long[] getLinkedMacAddresses(long macAddress) {
+        return read(() -> {
+            int slot = slotsByMacAddress.get(macAddress);
+            if (slot == NO_SLOT) {
+                return new long[0];
+            }
+            long[] linkedMacAddresses = new long[8];
+            int count = 0;
+            for (int linkedSlot = firstLinkedSlots[slot]; linkedSlot != NO_SLOT; linkedSlot = nextLinkedSlots[linkedSlot]) {
+                if (count == linkedMacAddresses.length) {
+                    linkedMacAddresses = Arrays.copyOf(linkedMacAddresses, count << 1);
+                }
+                linkedMacAddresses[count++] = macAddresses[linkedSlot];
+            }
+            return Arrays.copyOf(linkedMacAddresses, count);
+        });
+    }
+
+    public List<Device> getDevices() {
+        return read(() -> {
+            List<Device> devices = new ArrayList<>(deviceCount);
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (isDevice(slot)) {
+                    devices.add(toDevice(slot));
+                }
+            }
+            return devices;
+        });
+    }
+
+    public long[] getRootMacAddresses() {
+        return read(() -> {
+            long[] roots = new long[slotCount];
+            int count = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (isRoot(slot)) {
+                    roots[count++] = macAddresses[slot];
+                }
+            }
+            return Arrays.copyOf(roots, count);
+        });
+    }
+
+    public View view() {
+        return read(() -> {
+            viewed = true;
+            return new View(version, slotCount, macAddresses, deviceTypes, uplinkSlots, firstLinkedSlots,
+                    nextLinkedSlots);
+        });
+    }
+
+    private Device toDevice(int slot) {
+        Device device = new Device();
+        device.setDeviceType(deviceTypeAt(slot));
+        device.setMacAddress(MacAddress.toString(macAddresses[slot]));
+        if (uplinkSlots[slot] != NO_SLOT) {
+            device.setUplinkMacAddress(MacAddress.toString(macAddresses[uplinkSlots[slot]]));
+        }
+        return device;
+    }
+
+    // Slot level accessors for TopologyUtils, to be called inside read()
+
+    int slotCount() {
+        return slotCount;
+    }
+
+    int slotOfMacAddress(long macAddress) {
+        return slotsByMacAddress.get(macAddress);
+    }
+
+    boolean isDevice(int slot) {
+        return slot != NO_SLOT && deviceTypes[slot] != NO_DEVICE_TYPE;
+    }
+
+    // uplinks that are not registered devices themselves still head their own tree
+    boolean isRoot(int slot) {
+        return isDevice(slot) ? uplinkSlots[slot] == NO_SLOT : firstLinkedSlots[slot] != NO_SLOT;
+    }
+
+    long macAddressAt(int slot) {
+        return macAddresses[slot];
+    }
+
+    DeviceType deviceTypeAt(int slot) {
+        return deviceTypes[slot] < 0 ? null : DEVICE_TYPES[deviceTypes[slot]];
+    }
+
+    int uplinkSlotAt(int slot) {
+        return uplinkSlots[slot];
+    }
+
+    int firstLinkedSlotAt(int slot) {
+        return firstLinkedSlots[slot];
+    }
+
+    int nextLinkedSlotAt(int slot) {
+        return nextLinkedSlots[slot];
+    }
+
+    int firstRootSlot() {
+        return firstRootSlot;
+    }
+
+    int nextRootSlotAt(int slot) {
+        return nextRootSlots[slot];
+    }
+
+    // to be called inside readAggregates()
+    int descendantCountAt(int slot) {
+        return descendantCounts[slot];
+    }
+
+    int descendantCountAt(int slot, DeviceType deviceType) {
+        return typedDescendantCounts[slot * TYPE_COUNT + deviceType.ordinal()];
+    }
+
+    // to be called inside read(), false from a load until the next readAggregates()
+    boolean hasAggregates() {
+        return !aggregatesStale;
+    }
+
+    // levels of linked devices below the slot, 0 for a leaf
+    int heightAt(int slot) {
+        return heights[slot];
+    }
+
+    // up to limit slots of the devices with the most descendants, largest first, O(log n + limit)
+    int[] largestSubtreeSlots(int limit) {
+        int[] slots = new int[Math.min(limit, subtreeRanking.size())];
+        Iterator<Long> keys = subtreeRanking.descendingIterator();
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = Integer.MAX_VALUE - (int) keys.next().longValue();
+        }
+        return slots;
+    }
+
+    // to be called inside readAncestry()
+    int depthAt(int slot) {
+        return depths[slot];
+    }
+
+    int jumpSlotAt(int slot) {
+        return jumpSlots[slot];
+    }
+
+    // to be called inside read(), false while the labels wait for a full relabel by the next readIntervals()
+    boolean hasIntervals() {
+        return !intervalsStale;
+    }
+
+    // to be called inside readIntervals(), O(1) regardless of the depth
+    boolean isDescendant(int slot, int uplinkSlot) {
+        return enterLabels[uplinkSlot] < enterLabels[slot] && enterLabels[slot] < exitLabels[uplinkSlot];
+    }
+
+    // Lock-free view for long traversals such as streaming the topology to a slow client. Slots are
+    // append-only, grown arrays are copies and a placeholder promoted after the view was taken is written
+    // to copies as well (see detachViews()), so slots below the captured count keep their content from
+    // the captured version while links to slots added later are cut off.
+    public static final class View {
+
+        private final long version;
+        private final int slotCount;
+        private final long[] macAddresses;
+        private final byte[] deviceTypes;
+        private final int[] uplinkSlots;
+        private final int[] firstLinkedSlots;
+        private final int[] nextLinkedSlots;
+
+        private View(long version, int slotCount, long[] macAddresses, byte[] deviceTypes, int[] uplinkSlots,
+                     int[] firstLinkedSlots, int[] nextLinkedSlots) {
+            this.version = version;
+            this.slotCount = slotCount;
+            this.macAddresses = macAddresses;
+            this.deviceTypes = deviceTypes;
+            this.uplinkSlots = uplinkSlots;
+            this.firstLinkedSlots = firstLinkedSlots;
+            this.nextLinkedSlots = nextLinkedSlots;
+        }
+
+        public long version() {
+            return version;
+        }
+
+        int slotCount() {
+            return slotCount;
+        }
+
+        boolean isDevice(int slot) {
+            return slot != NO_SLOT && slot < slotCount && deviceTypes[slot] != NO_DEVICE_TYPE;
+        }
+
+        boolean isRoot(int slot) {
+            return isDevice(slot) ? visible(uplinkSlots[slot]) == NO_SLOT : firstLinkedSlotAt(slot) != NO_SLOT;
+        }
+
+        long macAddressAt(int slot) {
+            return macAddresses[slot];
+        }
+
+        // the stored code, negative for placeholders and devices without a type
+        byte deviceTypeCodeAt(int slot) {
+            return deviceTypes[slot];
+        }
+
+        int firstLinkedSlotAt(int slot) {
+            return visible(firstLinkedSlots[slot]);
+        }
+
+        int nextLinkedSlotAt(int slot) {
+            return visible(nextLinkedSlots[slot]);
+        }
+
+        private int visible(int slot) {
+            return slot < slotCount ? slot : NO_SLOT;
+        }
+    }
+}
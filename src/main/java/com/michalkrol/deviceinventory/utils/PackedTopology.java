@@ -0,0 +1,179 @@
+package com.michalkrol.deviceinventory.utils;
+
+import static com.michalkrol.deviceinventory.utils.DeviceTopologyIndex.NO_SLOT;
+
+import com.michalkrol.deviceinventory.model.DeviceNode;
+import com.michalkrol.deviceinventory.model.MacAddress;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Packed encoding of DeviceNode trees: a varint root count, then every node depth first as its 6 byte MAC
+// address followed by the varint count of its linked devices, which come right after it. Varints are
+// unsigned LEB128, so a leaf takes 7 bytes where JSON spells out 53 characters.
+public class PackedTopology {
+
+    public static final String MEDIA_TYPE_VALUE = "application/x-device-topology";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_VARINT_SIZE = 5;
+
+    public static void writeDeviceTopology(OutputStream outputStream, DeviceTopologyIndex.View view)
+            throws IOException {
+        int rootCount = 0;
+        for (int slot = 0; slot < view.slotCount(); slot++) {
+            if (view.isRoot(slot)) {
+                rootCount++;
+            }
+        }
+        PackedOutput output = new PackedOutput(outputStream);
+        output.writeVarint(rootCount);
+        for (int slot = 0; slot < view.slotCount(); slot++) {
+            if (view.isRoot(slot)) {
+                writeDeviceNode(output, slot, view);
+            }
+        }
+        output.flush();
+    }
+
+    // no root at all for a MAC address that is not registered, like JSON writes null
+    public static void writeSubDeviceTopology(OutputStream outputStream, MacAddress rootDeviceMacAddress,
+                                              DeviceTopologyIndex topologyIndex) throws IOException {
+        int rootSlot = topologyIndex.read(() -> topologyIndex.slotOfMacAddress(rootDeviceMacAddress.value()));
+        DeviceTopologyIndex.View view = topologyIndex.view();
+        PackedOutput output = new PackedOutput(outputStream);
+        if (view.isDevice(rootSlot)) {
+            output.writeVarint(1);
+            writeDeviceNode(output, rootSlot, view);
+        } else {
+            output.writeVarint(0);
+        }
+        output.flush();
+    }
+
+    public static List<DeviceNode> read(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE));
+        int rootCount = readVarint(input);
+        List<DeviceNode> roots = new ArrayList<>(Math.min(rootCount, 1024));
+        DeviceNode[] openNodes = new DeviceNode[16];
+        int[] remainingCounts = new int[16];
+        for (int root = 0; root < rootCount; root++) {
+            DeviceNode rootNode = new DeviceNode(MacAddress.toString(readMacAddress(input)));
+            roots.add(rootNode);
+            openNodes[0] = rootNode;
+            remainingCounts[0] = readVarint(input);
+            int depth = 1;
+            while (depth > 0) {
+                if (remainingCounts[depth - 1] == 0) {
+                    depth--;
+                    continue;
+                }
+                remainingCounts[depth - 1]--;
+                DeviceNode node = new DeviceNode(MacAddress.toString(readMacAddress(input)));
+                openNodes[depth - 1].addLinkedDevice(node);
+                if (depth == openNodes.length) {
+                    openNodes = Arrays.copyOf(openNodes, depth << 1);
+                    remainingCounts = Arrays.copyOf(remainingCounts, depth << 1);
+                }
+                openNodes[depth] = node;
+                remainingCounts[depth++] = readVarint(input);
+            }
+        }
+        return roots;
+    }
+
+    // the linked devices are pushed in reverse, so they are popped and written in index order
+    private static void writeDeviceNode(PackedOutput output, int rootSlot, DeviceTopologyIndex.View view)
+            throws IOException {
+        int[] pendingSlots = new int[16];
+        int pendingCount = 0;
+        pendingSlots[pendingCount++] = rootSlot;
+        while (pendingCount > 0) {
+            int slot = pendingSlots[--pendingCount];
+            int linkedCount = 0;
+            for (int linkedSlot = view.firstLinkedSlotAt(slot); linkedSlot != NO_SLOT;
+                 linkedSlot = view.nextLinkedSlotAt(linkedSlot)) {
+                linkedCount++;
+            }
+            output.writeMacAddress(view.macAddressAt(slot));
+            output.writeVarint(linkedCount);
+            if (pendingCount + linkedCount > pendingSlots.length) {
+                pendingSlots = Arrays.copyOf(pendingSlots, Math.max(pendingSlots.length << 1,
+                        pendingCount + linkedCount));
+            }
+            int position = pendingCount + linkedCount;
+            for (int linkedSlot = view.firstLinkedSlotAt(slot); linkedSlot != NO_SLOT;
+                 linkedSlot = view.nextLinkedSlotAt(linkedSlot)) {
+                pendingSlots[--position] = linkedSlot;
+            }
+            pendingCount += linkedCount;
+        }
+    }
+
+    private static long readMacAddress(DataInputStream input) throws IOException {
+        return (long) input.readUnsignedShort() << 32 | input.readInt() & 0xFFFF_FFFFL;
+    }
+
+    // counts are non-negative ints, so the fifth byte holds at most 3 more bits
+    private static int readVarint(DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < MAX_VARINT_SIZE * 7; shift += 7) {
+            int next = input.readUnsignedByte();
+            if (shift == 28 && next > 0x07) {
+                break;
+            }
+            value |= (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed count in packed topology.");
+    }
+
+    // a plain array instead of a BufferedOutputStream, whose single byte writes take a lock
+    private static final class PackedOutput {
+
+        private final OutputStream outputStream;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+
+        private PackedOutput(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        private void writeMacAddress(long macAddress) throws IOException {
+            ensureCapacity(6);
+            for (int shift = 40; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (macAddress >>> shift);
+            }
+        }
+
+        private void writeVarint(int value) throws IOException {
+            ensureCapacity(MAX_VARINT_SIZE);
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void ensureCapacity(int size) throws IOException {
+            if (buffer.length - position < size) {
+                outputStream.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+
+        private void flush() throws IOException {
+            outputStream.write(buffer, 0, position);
+            position = 0;
+            outputStream.flush();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.michalkrol.deviceinventory.utils;
+
+import com.michalkrol.deviceinventory.model.DeviceEntry;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// One sorted set of MAC addresses per device type, kept up to date by the topology index. Concatenated in
+// type order they are the sorted listing, so a page at any position or after any device is found in O(log n)
+// and the whole listing is produced without sorting. Devices without a type are listed last.
+@Component
+public class SortedDeviceIndex {
+
+    private static final DeviceType[] DEVICE_TYPES = DeviceType.values();
+    private static final int UNKNOWN_TYPE_SET = DEVICE_TYPES.length;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final SortedMacAddressSet[] sets = new SortedMacAddressSet[DEVICE_TYPES.length + 1];
+
+    public SortedDeviceIndex(DeviceTopologyIndex topologyIndex) {
+        for (int set = 0; set < sets.length; set++) {
+            sets[set] = new SortedMacAddressSet();
+        }
+        topologyIndex.addListener(new DeviceTopologyIndex.Listener() {
+            @Override
+            public void deviceAdded(long version, long macAddress, DeviceType deviceType, long uplinkMacAddress) {
+                add(macAddress, deviceType);
+            }
+
+            @Override
+            public void reloaded(long version) {
+                load(topologyIndex.view());
+            }
+        });
+        load(topologyIndex.view());
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return sizeLocked();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // position of the first device sorted after the given one, whether that one is registered or not
+    public int positionAfter(DeviceType deviceType, long macAddress) {
+        lock.readLock().lock();
+        try {
+            int set = setOf(deviceType);
+            int position = 0;
+            for (int before = 0; before < set; before++) {
+                position += sets[before].size();
+            }
+            return position + sets[set].rank(macAddress + 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // up to count devices from the given position of the sorted listing on
+    public List<DeviceEntry> list(int position, int count) {
+        lock.readLock().lock();
+        try {
+            List<DeviceEntry> entries = new ArrayList<>(Math.max(0, Math.min(count, sizeLocked() - position)));
+            long[] macAddresses = new long[SortedMacAddressSet.CHUNK_SIZE];
+            for (int set = 0; set < sets.length && entries.size() < count; set++) {
+                if (position >= sets[set].size()) {
+                    position -= sets[set].size();
+                    continue;
+                }
+                DeviceType deviceType = set == UNKNOWN_TYPE_SET ? null : DEVICE_TYPES[set];
+                int copied;
+                while (entries.size() < count && (copied = sets[set].copy(position, macAddresses, 0,
+                        Math.min(macAddresses.length, count - entries.size()))) > 0) {
+                    for (int i = 0; i < copied; i++) {
+                        entries.add(DeviceEntry.builder()
+                                .deviceType(deviceType)
+                                .macAddress(MacAddress.toString(macAddresses[i]))
+                                .build());
+                    }
+                    position += copied;
+                }
+                position = 0;
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(long macAddress, DeviceType deviceType) {
+        lock.writeLock().lock();
+        try {
+            sets[setOf(deviceType)].add(macAddress);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // split by type in one pass over the slots and sorted as primitives
+    private void load(DeviceTopologyIndex.View view) {
+        long[][] macAddresses = new long[sets.length][];
+        int[] counts = new int[sets.length];
+        for (int set = 0; set < sets.length; set++) {
+            macAddresses[set] = new long[16];
+        }
+        for (int slot = 0; slot < view.slotCount(); slot++) {
+            if (!view.isDevice(slot)) {
+                continue;
+            }
+            byte deviceTypeCode = view.deviceTypeCodeAt(slot);
+            int set = deviceTypeCode >= 0 ? deviceTypeCode : UNKNOWN_TYPE_SET;
+            if (counts[set] == macAddresses[set].length) {
+                macAddresses[set] = Arrays.copyOf(macAddresses[set], counts[set] * 2);
+            }
+            macAddresses[set][counts[set]++] = view.macAddressAt(slot);
+        }
+        lock.writeLock().lock();
+        try {
+            for (int set = 0; set < sets.length; set++) {
+                Arrays.sort(macAddresses[set], 0, counts[set]);
+                sets[set].load(macAddresses[set], counts[set]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int sizeLocked() {
+        int size = 0;
+        for (SortedMacAddressSet set : sets) {
+            size += set.size();
+        }
+        return size;
+    }
+
+    private static int setOf(DeviceType deviceType) {
+        return deviceType == null ? UNKNOWN_TYPE_SET : deviceType.ordinal();
+    }
+}
@@ -0,0 +1,179 @@
+package com.michalkrol.deviceinventory.utils;
+
+import java.util.Arrays;
+
+// Sorted set of packed MAC addresses, kept in chunks of at most CHUNK_SIZE sorted values. A Fenwick tree over
+// the chunk sizes turns positions into chunks, so lookups, ranks and positional reads are O(log n), while an
+// insert only moves values within one chunk. Not thread safe, SortedDeviceIndex guards it.
+public class SortedMacAddressSet {
+
+    static final int CHUNK_SIZE = 512;
+
+    private long[][] chunks;
+    private int[] chunkSizes;
+    // first value of every chunk, to find the chunk a value belongs to by binary search
+    private long[] chunkFirsts;
+    private int[] chunkCounts;
+    private int chunkCount;
+    private int size;
+
+    public SortedMacAddressSet() {
+        load(new long[0], 0);
+    }
+
+    // takes the first count values of an ascending array without duplicates, chunks are filled half
+    // so that the following inserts do not split them right away
+    public void load(long[] sortedMacAddresses, int count) {
+        int fill = CHUNK_SIZE / 2;
+        chunkCount = Math.max(1, (count + fill - 1) / fill);
+        chunks = new long[chunkCount][];
+        chunkSizes = new int[chunkCount];
+        chunkFirsts = new long[chunkCount];
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int from = chunk * fill;
+            int chunkSize = Math.min(fill, count - from);
+            chunks[chunk] = new long[CHUNK_SIZE];
+            if (chunkSize > 0) {
+                System.arraycopy(sortedMacAddresses, from, chunks[chunk], 0, chunkSize);
+                chunkSizes[chunk] = chunkSize;
+                chunkFirsts[chunk] = chunks[chunk][0];
+            }
+        }
+        size = count;
+        rebuildChunkCounts();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean add(long macAddress) {
+        int chunk = chunkOf(macAddress);
+        int position = Arrays.binarySearch(chunks[chunk], 0, chunkSizes[chunk], macAddress);
+        if (position >= 0) {
+            return false;
+        }
+        position = -position - 1;
+        if (chunkSizes[chunk] == CHUNK_SIZE) {
+            split(chunk);
+            if (position > CHUNK_SIZE / 2) {
+                chunk++;
+                position -= CHUNK_SIZE / 2;
+            }
+        }
+        long[] values = chunks[chunk];
+        System.arraycopy(values, position, values, position + 1, chunkSizes[chunk] - position);
+        values[position] = macAddress;
+        chunkSizes[chunk]++;
+        chunkFirsts[chunk] = values[0];
+        for (int i = chunk + 1; i <= chunkCount; i += i & -i) {
+            chunkCounts[i]++;
+        }
+        size++;
+        return true;
+    }
+
+    // number of values lower than the given one, which is also its position when present
+    public int rank(long macAddress) {
+        int chunk = chunkOf(macAddress);
+        int position = Arrays.binarySearch(chunks[chunk], 0, chunkSizes[chunk], macAddress);
+        return countBefore(chunk) + (position >= 0 ? position : -position - 1);
+    }
+
+    public long get(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException(position);
+        }
+        int chunk = chunkAt(position);
+        return chunks[chunk][position - countBefore(chunk)];
+    }
+
+    // copies up to count values from the given position on, returns how many have been copied
+    public int copy(int position, long[] target, int targetPosition, int count) {
+        if (position >= size || count <= 0) {
+            return 0;
+        }
+        int chunk = chunkAt(position);
+        int offset = position - countBefore(chunk);
+        int copied = 0;
+        while (copied < count && chunk < chunkCount) {
+            int length = Math.min(count - copied, chunkSizes[chunk] - offset);
+            System.arraycopy(chunks[chunk], offset, target, targetPosition + copied, length);
+            copied += length;
+            chunk++;
+            offset = 0;
+        }
+        return copied;
+    }
+
+    // the last chunk starting at or below the value, the first one for values below all chunks
+    private int chunkOf(long macAddress) {
+        int low = 1;
+        int high = chunkCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (chunkFirsts[middle] <= macAddress) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low - 1;
+    }
+
+    // descends the Fenwick tree to the chunk holding the given position
+    private int chunkAt(int position) {
+        int chunk = 0;
+        int remaining = position;
+        for (int step = Integer.highestOneBit(chunkCount); step > 0; step >>= 1) {
+            int next = chunk + step;
+            if (next <= chunkCount && chunkCounts[next] <= remaining) {
+                chunk = next;
+                remaining -= chunkCounts[next];
+            }
+        }
+        return chunk;
+    }
+
+    private int countBefore(int chunk) {
+        int count = 0;
+        for (int i = chunk; i > 0; i -= i & -i) {
+            count += chunkCounts[i];
+        }
+        return count;
+    }
+
+    // the upper half moves to a new chunk right after it, the tree is rebuilt once per CHUNK_SIZE / 2 inserts
+    private void split(int chunk) {
+        if (chunkCount == chunks.length) {
+            int capacity = chunkCount * 2;
+            chunks = Arrays.copyOf(chunks, capacity);
+            chunkSizes = Arrays.copyOf(chunkSizes, capacity);
+            chunkFirsts = Arrays.copyOf(chunkFirsts, capacity);
+        }
+        System.arraycopy(chunks, chunk + 1, chunks, chunk + 2, chunkCount - chunk - 1);
+        System.arraycopy(chunkSizes, chunk + 1, chunkSizes, chunk + 2, chunkCount - chunk - 1);
+        System.arraycopy(chunkFirsts, chunk + 1, chunkFirsts, chunk + 2, chunkCount - chunk - 1);
+        int half = CHUNK_SIZE / 2;
+        long[] upper = new long[CHUNK_SIZE];
+        System.arraycopy(chunks[chunk], half, upper, 0, CHUNK_SIZE - half);
+        chunks[chunk + 1] = upper;
+        chunkSizes[chunk + 1] = CHUNK_SIZE - half;
+        chunkFirsts[chunk + 1] = upper[0];
+        chunkSizes[chunk] = half;
+        chunkCount++;
+        rebuildChunkCounts();
+    }
+
+    private void rebuildChunkCounts() {
+        chunkCounts = new int[chunks.length + 1];
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int i = chunk + 1;
+            chunkCounts[i] += chunkSizes[chunk];
+            int parent = i + (i & -i);
+            if (parent <= chunkCount) {
+                chunkCounts[parent] += chunkCounts[i];
+            }
+        }
+    }
+}
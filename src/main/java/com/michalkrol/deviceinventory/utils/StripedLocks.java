@@ -0,0 +1,49 @@
+package com.michalkrol.deviceinventory.utils;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+public class StripedLocks {
+
+    private final ReentrantLock[] locks;
+
+    public StripedLocks(int stripes) {
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("The number of stripes must be a power of two.");
+        }
+        locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    // both stripes are always taken in index order, so two callers can never wait for each other crosswise
+    public <T> T withLocks(long firstKey, long secondKey, Supplier<T> action) {
+        int first = stripeOf(firstKey);
+        int second = stripeOf(secondKey);
+        ReentrantLock lower = locks[Math.min(first, second)];
+        ReentrantLock upper = locks[Math.max(first, second)];
+        lower.lock();
+        try {
+            if (upper != lower) {
+                upper.lock();
+            }
+            try {
+                return action.get();
+            } finally {
+                if (upper != lower) {
+                    upper.unlock();
+                }
+            }
+        } finally {
+            lower.unlock();
+        }
+    }
+
+    private int stripeOf(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & (locks.length - 1);
+    }
+}
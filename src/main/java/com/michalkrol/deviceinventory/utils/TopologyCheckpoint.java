@@ -0,0 +1,139 @@
+package com.michalkrol.deviceinventory.utils;
+
+import static com.michalkrol.deviceinventory.utils.DeviceTopologyIndex.NO_SLOT;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Binary copy of the topology index: a 32 byte header followed by one 11 byte entry per slot in
+// breadth first order, holding the packed MAC address, the device type code and the position of the uplink.
+public class TopologyCheckpoint {
+
+    private static final int MAGIC = 0x44495450; // "DITP"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 11;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // row count and highest id of the device table, devices are never updated or deleted
+    public record Fingerprint(long rowCount, long maxId) {
+    }
+
+    // written next to the target and moved over it, so a crash never leaves a half written checkpoint behind
+    public static void write(Path path, DeviceTopologyIndex.View view, Fingerprint fingerprint) throws IOException {
+        int[] order = new int[view.slotCount()];
+        int[] uplinkPositions = new int[view.slotCount()];
+        int count = breadthFirstOrder(view, order, uplinkPositions);
+
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 checksum = new CRC32();
+        try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            channel.position(HEADER_SIZE);
+            for (int position = 0; position < count; position++) {
+                if (buffer.remaining() < ENTRY_SIZE) {
+                    writeChecked(channel, buffer, checksum);
+                }
+                long macAddress = view.macAddressAt(order[position]);
+                buffer.putShort((short) (macAddress >>> 32));
+                buffer.putInt((int) macAddress);
+                buffer.put(view.deviceTypeCodeAt(order[position]));
+                buffer.putInt(uplinkPositions[position]);
+            }
+            writeChecked(channel, buffer, checksum);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .putLong(fingerprint.rowCount())
+                    .putLong(fingerprint.maxId())
+                    .putInt(count)
+                    .putInt((int) checksum.getValue())
+                    .flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // false when there is no checkpoint or it was taken from a different database content, the
+    // entries are only read from the mapped file once the header and the checksum match
+    public static boolean restore(Path path, Fingerprint fingerprint, DeviceTopologyIndex topologyIndex)
+            throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException exception) {
+            return false;
+        }
+        if (mapped.capacity() < HEADER_SIZE || mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unknown topology checkpoint format in " + path + ".");
+        }
+        if (mapped.getLong(8) != fingerprint.rowCount() || mapped.getLong(16) != fingerprint.maxId()) {
+            return false;
+        }
+        int count = mapped.getInt(24);
+        if (count < 0 || mapped.capacity() != HEADER_SIZE + (long) count * ENTRY_SIZE) {
+            throw new IOException("Truncated topology checkpoint " + path + ".");
+        }
+        ByteBuffer entries = mapped.slice(HEADER_SIZE, count * ENTRY_SIZE);
+        CRC32 checksum = new CRC32();
+        checksum.update(entries.duplicate());
+        if ((int) checksum.getValue() != mapped.getInt(28)) {
+            throw new IOException("Checksum mismatch in topology checkpoint " + path + ".");
+        }
+
+        long[] macAddresses = new long[count];
+        byte[] deviceTypes = new byte[count];
+        int[] uplinkSlots = new int[count];
+        for (int slot = 0; slot < count; slot++) {
+            macAddresses[slot] = (entries.getShort() & 0xFFFFL) << 32 | entries.getInt() & 0xFFFF_FFFFL;
+            deviceTypes[slot] = entries.get();
+            uplinkSlots[slot] = entries.getInt();
+            if (uplinkSlots[slot] < NO_SLOT || uplinkSlots[slot] >= slot) {
+                throw new IOException("Invalid uplink position in topology checkpoint " + path + ".");
+            }
+        }
+        topologyIndex.restore(macAddresses, deviceTypes, uplinkSlots, count);
+        return true;
+    }
+
+    // roots in slot order first, then level by level, like the index links them
+    private static int breadthFirstOrder(DeviceTopologyIndex.View view, int[] order, int[] uplinkPositions) {
+        int count = 0;
+        for (int slot = 0; slot < view.slotCount(); slot++) {
+            if (view.isRoot(slot)) {
+                uplinkPositions[count] = NO_SLOT;
+                order[count++] = slot;
+            }
+        }
+        for (int position = 0; position < count; position++) {
+            for (int linkedSlot = view.firstLinkedSlotAt(order[position]); linkedSlot != NO_SLOT;
+                 linkedSlot = view.nextLinkedSlotAt(linkedSlot)) {
+                uplinkPositions[count] = position;
+                order[count++] = linkedSlot;
+            }
+        }
+        return count;
+    }
+
+    private static void writeChecked(FileChannel channel, ByteBuffer buffer, CRC32 checksum) throws IOException {
+        buffer.flip();
+        checksum.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -1,161 +1,520 @@
 package com.michalkrol.deviceinventory.utils;
 
+import static com.michalkrol.deviceinventory.utils.DeviceTopologyIndex.NO_SLOT;
+
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.michalkrol.deviceinventory.exception.DeviceInventoryException;
+import com.michalkrol.deviceinventory.exception.DeviceInventoryException.Rule;
+import com.michalkrol.deviceinventory.model.CommonUplink;
 import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceEntry;
 import com.michalkrol.deviceinventory.model.DeviceNode;
 import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.ImpactReport;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.model.SubtreeAggregates;
 
+import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 public class TopologyUtils {
 
+    private static final byte UNVISITED = 0;
+    private static final byte VISITING = 1;
+    private static final byte VISITED = 2;
+    private static final byte CYCLIC = 3;
+
     public static void validateNoCycles(List<Device> devices) {
+        validateNoCycles(DeviceTopologyIndex.of(devices));
+    }
 
-        Map<String, Device> devicesMap = devices.stream()
-                .collect(Collectors.toMap(Device::getMacAddress, device -> device));
+    public static void validateNoCycles(DeviceTopologyIndex topologyIndex) {
+        topologyIndex.read(() -> {
+            byte[] deviceStates = new byte[topologyIndex.slotCount()];
+            int[] path = new int[16];
 
-        Map<String, State> deviceStates = devices.stream()
-                .collect(Collectors.toMap(Device::getMacAddress, device -> State.UNVISITED));
+            for (int slot = 0; slot < deviceStates.length; slot++) {
+                if (!topologyIndex.isDevice(slot) || deviceStates[slot] != UNVISITED) {
+                    continue;
+                }
+                // every device has at most one uplink, so the walk towards the root is the whole DFS branch
+                int pathLength = 0;
+                int currentSlot = slot;
+                while (topologyIndex.isDevice(currentSlot) && deviceStates[currentSlot] == UNVISITED) {
+                    deviceStates[currentSlot] = VISITING;
+                    if (pathLength == path.length) {
+                        path = Arrays.copyOf(path, pathLength << 1);
+                    }
+                    path[pathLength++] = currentSlot;
+                    currentSlot = topologyIndex.uplinkSlotAt(currentSlot);
+                }
+                if (topologyIndex.isDevice(currentSlot) && deviceStates[currentSlot] == VISITING) {
+                    throw new IllegalStateException("A cycle has been detected in the topology: "
+                            + buildCycleDescription(path, pathLength, currentSlot, topologyIndex));
+                }
+                for (int i = 0; i < pathLength; i++) {
+                    deviceStates[path[i]] = VISITED;
+                }
+            }
+            return null;
+        });
+    }
 
-        Deque<String> pathStack = new ArrayDeque<>();
+    // the devices on a cycle and those linked below them, none of their uplink walks ends at a root
+    public record TopologyCycles(List<String> cycles, Set<Long> macAddresses) {
+    }
 
-        devices.stream()
-                .map(Device::getMacAddress)
-                .forEach(macAddress -> depthFirstSearch(macAddress, devicesMap, deviceStates, pathStack));
+    public static TopologyCycles findCycles(DeviceTopologyIndex topologyIndex) {
+        return topologyIndex.read(() -> {
+            byte[] deviceStates = new byte[topologyIndex.slotCount()];
+            int[] path = new int[16];
+            List<String> cycles = new ArrayList<>();
+            Set<Long> macAddresses = new HashSet<>();
+
+            for (int slot = 0; slot < deviceStates.length; slot++) {
+                if (!topologyIndex.isDevice(slot) || deviceStates[slot] != UNVISITED) {
+                    continue;
+                }
+                int pathLength = 0;
+                int currentSlot = slot;
+                while (topologyIndex.isDevice(currentSlot) && deviceStates[currentSlot] == UNVISITED) {
+                    deviceStates[currentSlot] = VISITING;
+                    if (pathLength == path.length) {
+                        path = Arrays.copyOf(path, pathLength << 1);
+                    }
+                    path[pathLength++] = currentSlot;
+                    currentSlot = topologyIndex.uplinkSlotAt(currentSlot);
+                }
+                byte endState = topologyIndex.isDevice(currentSlot) ? deviceStates[currentSlot] : VISITED;
+                if (endState == VISITING) {
+                    cycles.add(buildCycleDescription(path, pathLength, currentSlot, topologyIndex));
+                }
+                byte pathState = endState == VISITED ? VISITED : CYCLIC;
+                for (int i = 0; i < pathLength; i++) {
+                    deviceStates[path[i]] = pathState;
+                    if (pathState == CYCLIC) {
+                        macAddresses.add(topologyIndex.macAddressAt(path[i]));
+                    }
+                }
+            }
+            return new TopologyCycles(cycles, macAddresses);
+        });
     }
 
-    private static void depthFirstSearch(
-            String currentMacAddress,
-            Map<String, Device> devicesMap,
-            Map<String, State> deviceStates,
-            Deque<String> stack) {
+    public static void checkNoCycle(MacAddress macAddress, MacAddress uplinkMacAddress,
+                                    DeviceTopologyIndex topologyIndex) {
+        topologyIndex.read(() -> {
+            int slot = topologyIndex.slotOfMacAddress(macAddress.value());
+            if (slot == NO_SLOT) {
+                // nothing links to a MAC the index has never seen, so it cannot close a loop
+                return null;
+            }
+            int steps = 0;
+            for (int ancestorSlot = topologyIndex.slotOfMacAddress(uplinkMacAddress.value());
+                 ancestorSlot != NO_SLOT && steps <= topologyIndex.slotCount();
+                 ancestorSlot = topologyIndex.uplinkSlotAt(ancestorSlot), steps++) {
+                if (ancestorSlot == slot) {
+                    throw new DeviceInventoryException(Rule.CYCLE, "Linking " + macAddress + " to " + uplinkMacAddress
+                            + " would create a cycle in the topology.");
+                }
+            }
+            return null;
+        });
+    }
 
-        deviceStates.put(currentMacAddress, State.VISITING);
-        stack.push(currentMacAddress);
+    private static String buildCycleDescription(int[] path, int pathLength, int start,
+                                                DeviceTopologyIndex topologyIndex) {
+        List<String> cycle = new ArrayList<>();
+        for (int i = pathLength - 1; i >= 0; i--) {
+            cycle.add(MacAddress.toString(topologyIndex.macAddressAt(path[i])));
+            if (path[i] == start) break;
+        }
+        Collections.reverse(cycle);
+        return cycle.toString();
+    }
 
-        Device device = devicesMap.get(currentMacAddress);
+    public static DeviceNode prepareSubDeviceTopology(String rootDeviceMacAddress, List<Device> devices) {
+        return prepareSubDeviceTopology(MacAddress.parse(rootDeviceMacAddress), DeviceTopologyIndex.of(devices));
+    }
 
-        if (device != null && device.getUplinkMacAddress() != null) {
-            String uplinkMacAddress = device.getUplinkMacAddress();
+    public static DeviceNode prepareSubDeviceTopology(MacAddress rootDeviceMacAddress, DeviceTopologyIndex topologyIndex) {
+        return topologyIndex.read(() -> {
+            int rootSlot = topologyIndex.slotOfMacAddress(rootDeviceMacAddress.value());
+            return topologyIndex.isDevice(rootSlot) ? prepareDeviceNode(rootSlot, topologyIndex) : null;
+        });
+    }
 
-            if (devicesMap.containsKey(uplinkMacAddress)) {
-                if (deviceStates.get(uplinkMacAddress) == State.UNVISITED) {
-                    depthFirstSearch(uplinkMacAddress, devicesMap, deviceStates, stack);
-                } else if (deviceStates.get(uplinkMacAddress) == State.VISITING) {
-                    throw new IllegalStateException("A cycle has been detected in the topology: "
-                            + buildCycleDescription(stack, uplinkMacAddress));
+    public static List<DeviceNode> prepareDeviceTopology(List<Device> devices) {
+        return prepareDeviceTopology(DeviceTopologyIndex.of(devices));
+    }
+
+    public static List<DeviceNode> prepareDeviceTopology(DeviceTopologyIndex topologyIndex) {
+        return topologyIndex.read(() -> {
+            List<DeviceNode> roots = new ArrayList<>();
+            for (int slot = 0; slot < topologyIndex.slotCount(); slot++) {
+                if (topologyIndex.isRoot(slot)) {
+                    roots.add(prepareDeviceNode(slot, topologyIndex));
                 }
             }
+            return roots;
+        });
+    }
+
+    private static DeviceNode prepareDeviceNode(int rootSlot, DeviceTopologyIndex topologyIndex) {
+        DeviceNode rootNode = new DeviceNode(MacAddress.toString(topologyIndex.macAddressAt(rootSlot)));
+        Deque<DeviceNode> pendingNodes = new ArrayDeque<>();
+        Deque<Integer> pendingSlots = new ArrayDeque<>();
+        pendingNodes.push(rootNode);
+        pendingSlots.push(rootSlot);
+
+        while (!pendingNodes.isEmpty()) {
+            DeviceNode parentNode = pendingNodes.pop();
+            int parentSlot = pendingSlots.pop();
+            for (int linkedSlot = topologyIndex.firstLinkedSlotAt(parentSlot);
+                 linkedSlot != NO_SLOT;
+                 linkedSlot = topologyIndex.nextLinkedSlotAt(linkedSlot)) {
+                DeviceNode childNode = new DeviceNode(MacAddress.toString(topologyIndex.macAddressAt(linkedSlot)));
+                parentNode.addLinkedDevice(childNode);
+                pendingNodes.push(childNode);
+                pendingSlots.push(linkedSlot);
+            }
         }
+        return rootNode;
+    }
 
-        stack.pop();
-        deviceStates.put(currentMacAddress, State.VISITED);
+    // the cursor continues the roots, or the linked devices of a subtree root, after the given MAC address
+    public record TopologyLimits(int maxDepth, int childLimit, MacAddress cursor) {
     }
 
-    private static String buildCycleDescription(Deque<String> stack, String start) {
-        List<String> cycle = new ArrayList<>();
-        for (String string : stack) {
-            cycle.add(string);
-            if (string.equals(start)) break;
+    private record PendingNode(DeviceNode node, int linkedSlot, int depth) {
+    }
+
+    public static List<DeviceNode> prepareDeviceTopology(DeviceTopologyIndex topologyIndex, TopologyLimits limits) {
+        return topologyIndex.readAggregates(() -> {
+            int rootSlot = topologyIndex.firstRootSlot();
+            if (limits.cursor() != null) {
+                int cursorSlot = topologyIndex.slotOfMacAddress(limits.cursor().value());
+                if (cursorSlot == NO_SLOT || !topologyIndex.isRoot(cursorSlot)) {
+                    throw new DeviceInventoryException("Invalid page cursor " + limits.cursor() + ".");
+                }
+                rootSlot = topologyIndex.nextRootSlotAt(cursorSlot);
+            }
+            List<DeviceNode> roots = new ArrayList<>();
+            for (; rootSlot != NO_SLOT && roots.size() < limits.childLimit();
+                 rootSlot = topologyIndex.nextRootSlotAt(rootSlot)) {
+                roots.add(prepareDeviceNode(rootSlot, topologyIndex.firstLinkedSlotAt(rootSlot), limits, topologyIndex));
+            }
+            return roots;
+        });
+    }
+
+    public static DeviceNode prepareSubDeviceTopology(MacAddress rootDeviceMacAddress, DeviceTopologyIndex topologyIndex,
+                                                      TopologyLimits limits) {
+        return topologyIndex.readAggregates(() -> {
+            int rootSlot = topologyIndex.slotOfMacAddress(rootDeviceMacAddress.value());
+            if (!topologyIndex.isDevice(rootSlot)) {
+                return null;
+            }
+            int linkedSlot = topologyIndex.firstLinkedSlotAt(rootSlot);
+            if (limits.cursor() != null) {
+                int cursorSlot = topologyIndex.slotOfMacAddress(limits.cursor().value());
+                if (cursorSlot == NO_SLOT || topologyIndex.uplinkSlotAt(cursorSlot) != rootSlot) {
+                    throw new DeviceInventoryException("Invalid page cursor " + limits.cursor() + ".");
+                }
+                linkedSlot = topologyIndex.nextLinkedSlotAt(cursorSlot);
+            }
+            return prepareDeviceNode(rootSlot, linkedSlot, limits, topologyIndex);
+        });
+    }
+
+    // visits only the returned nodes and one more linked slot per node to tell whether there is more
+    private static DeviceNode prepareDeviceNode(int rootSlot, int firstLinkedSlot, TopologyLimits limits,
+                                                DeviceTopologyIndex topologyIndex) {
+        DeviceNode rootNode = prepareCountedNode(rootSlot, topologyIndex);
+        Deque<PendingNode> pendingNodes = new ArrayDeque<>();
+        pendingNodes.push(new PendingNode(rootNode, firstLinkedSlot, 0));
+
+        while (!pendingNodes.isEmpty()) {
+            PendingNode pendingNode = pendingNodes.pop();
+            int linkedSlot = pendingNode.linkedSlot();
+            if (pendingNode.depth() < limits.maxDepth()) {
+                for (int count = 0; linkedSlot != NO_SLOT && count < limits.childLimit(); count++) {
+                    DeviceNode childNode = prepareCountedNode(linkedSlot, topologyIndex);
+                    pendingNode.node().addLinkedDevice(childNode);
+                    pendingNodes.push(new PendingNode(childNode, topologyIndex.firstLinkedSlotAt(linkedSlot),
+                            pendingNode.depth() + 1));
+                    linkedSlot = topologyIndex.nextLinkedSlotAt(linkedSlot);
+                }
+            }
+            pendingNode.node().setHasMore(linkedSlot != NO_SLOT);
         }
-        Collections.reverse(cycle);
-        return cycle.toString();
+        return rootNode;
     }
 
-    public static DeviceNode prepareSubDeviceTopology(String rootDeviceMacAddress, List<Device> devices) {
-        Map<String, DeviceNode> deviceNodesMap = devices.stream()
-                .collect(Collectors.toMap(Device::getMacAddress, device -> new DeviceNode(device.getMacAddress())));
+    private static DeviceNode prepareCountedNode(int slot, DeviceTopologyIndex topologyIndex) {
+        DeviceNode deviceNode = new DeviceNode(MacAddress.toString(topologyIndex.macAddressAt(slot)));
+        deviceNode.setDescendantCount(topologyIndex.descendantCountAt(slot));
+        return deviceNode;
+    }
 
-        devices.forEach(device -> {
-            String mac = device.getMacAddress();
-            String parentMac = device.getUplinkMacAddress();
-            if (parentMac == null || parentMac.isEmpty()) {
-                // a possible root
-                return;
+    // from the device itself up to the root of its tree
+    public static List<DeviceEntry> prepareUplinkPath(MacAddress macAddress, DeviceTopologyIndex topologyIndex) {
+        return topologyIndex.readAncestry(() -> {
+            int slot = topologyIndex.slotOfMacAddress(macAddress.value());
+            if (!topologyIndex.isDevice(slot)) {
+                return null;
             }
-            DeviceNode parent = deviceNodesMap.get(parentMac);
-            DeviceNode child = deviceNodesMap.get(mac);
-            if (parent != null) {
-                parent.addLinkedDevice(child);
+            List<DeviceEntry> uplinkPath = new ArrayList<>(topologyIndex.depthAt(slot) + 1);
+            for (; slot != NO_SLOT; slot = topologyIndex.uplinkSlotAt(slot)) {
+                uplinkPath.add(prepareDeviceEntry(slot, topologyIndex));
             }
+            return uplinkPath;
         });
+    }
 
-        return deviceNodesMap.getOrDefault(rootDeviceMacAddress, null);
+    // lifts the deeper device to the depth of the other one, then lifts both until they meet, O(log depth)
+    public static CommonUplink findCommonUplink(MacAddress firstMacAddress, MacAddress secondMacAddress,
+                                                DeviceTopologyIndex topologyIndex) {
+        return topologyIndex.readAncestry(() -> {
+            int firstSlot = topologyIndex.slotOfMacAddress(firstMacAddress.value());
+            int secondSlot = topologyIndex.slotOfMacAddress(secondMacAddress.value());
+            if (!topologyIndex.isDevice(firstSlot) || !topologyIndex.isDevice(secondSlot)) {
+                return null;
+            }
+            int depth = Math.min(topologyIndex.depthAt(firstSlot), topologyIndex.depthAt(secondSlot));
+            int first = liftToDepth(firstSlot, depth, topologyIndex);
+            int second = liftToDepth(secondSlot, depth, topologyIndex);
+            // jumps only depend on the depth, so both devices always jump equally far
+            while (first != second) {
+                if (topologyIndex.uplinkSlotAt(first) == NO_SLOT) {
+                    return null;
+                }
+                if (topologyIndex.jumpSlotAt(first) == topologyIndex.jumpSlotAt(second)) {
+                    first = topologyIndex.uplinkSlotAt(first);
+                    second = topologyIndex.uplinkSlotAt(second);
+                } else {
+                    first = topologyIndex.jumpSlotAt(first);
+                    second = topologyIndex.jumpSlotAt(second);
+                }
+            }
+            return CommonUplink.builder()
+                    .deviceType(topologyIndex.deviceTypeAt(first))
+                    .macAddress(MacAddress.toString(topologyIndex.macAddressAt(first)))
+                    .firstDistance(topologyIndex.depthAt(firstSlot) - topologyIndex.depthAt(first))
+                    .secondDistance(topologyIndex.depthAt(secondSlot) - topologyIndex.depthAt(first))
+                    .build();
+        });
     }
 
-    public static List<DeviceNode> prepareDeviceTopology(List<Device> devices) {
-        Set<String> hasUplinkDevice = new HashSet<>();
-        Map<String, DeviceNode> deviceNodesMap = prepareDeviceNodesMap(devices);
-
-        devices.forEach(device -> {
-            String macAddress = device.getMacAddress();
-            String uplinkDeviceMacAddress = device.getUplinkMacAddress();
-            if (uplinkDeviceMacAddress != null) {
-                DeviceNode parentNode = deviceNodesMap.get(uplinkDeviceMacAddress);
-                DeviceNode childNode = deviceNodesMap.get(macAddress);
-                parentNode.addLinkedDevice(childNode);
-                hasUplinkDevice.add(macAddress);
+    public static boolean isBehind(MacAddress macAddress, MacAddress uplinkMacAddress,
+                                   DeviceTopologyIndex topologyIndex) {
+        return topologyIndex.readIntervals(() -> {
+            int slot = topologyIndex.slotOfMacAddress(macAddress.value());
+            int uplinkSlot = topologyIndex.slotOfMacAddress(uplinkMacAddress.value());
+            return topologyIndex.isDevice(slot) && topologyIndex.isDevice(uplinkSlot)
+                    && topologyIndex.isDescendant(slot, uplinkSlot);
+        });
+    }
+
+    // The count comes from the maintained descendant counts, only the listed devices are visited: depth first
+    // through the linked lists, which is the topology order, O(limit + depth) instead of O(subtree).
+    public static ImpactReport prepareImpactReport(MacAddress macAddress, DeviceTopologyIndex topologyIndex,
+                                                   int limit) {
+        return topologyIndex.readAggregates(() -> {
+            int slot = topologyIndex.slotOfMacAddress(macAddress.value());
+            if (!topologyIndex.isDevice(slot)) {
+                return null;
             }
+            int affectedDeviceCount = topologyIndex.descendantCountAt(slot);
+            List<DeviceEntry> affectedDevices = new ArrayList<>(Math.min(limit, affectedDeviceCount));
+            int[] pendingSlots = new int[16];
+            int depth = 0;
+            pendingSlots[depth++] = topologyIndex.firstLinkedSlotAt(slot);
+            while (depth > 0 && affectedDevices.size() < limit) {
+                int linkedSlot = pendingSlots[depth - 1];
+                if (linkedSlot == NO_SLOT) {
+                    depth--;
+                    continue;
+                }
+                pendingSlots[depth - 1] = topologyIndex.nextLinkedSlotAt(linkedSlot);
+                affectedDevices.add(prepareDeviceEntry(linkedSlot, topologyIndex));
+                if (depth == pendingSlots.length) {
+                    pendingSlots = Arrays.copyOf(pendingSlots, depth << 1);
+                }
+                pendingSlots[depth++] = topologyIndex.firstLinkedSlotAt(linkedSlot);
+            }
+            return ImpactReport.builder()
+                    .deviceType(topologyIndex.deviceTypeAt(slot))
+                    .macAddress(MacAddress.toString(topologyIndex.macAddressAt(slot)))
+                    .affectedDeviceCount(affectedDeviceCount)
+                    .affectedDevices(affectedDevices)
+                    .build();
+        });
+    }
+
+    public static SubtreeAggregates prepareSubtreeAggregates(MacAddress macAddress,
+                                                             DeviceTopologyIndex topologyIndex) {
+        return topologyIndex.readAggregates(() -> {
+            int slot = topologyIndex.slotOfMacAddress(macAddress.value());
+            return topologyIndex.isDevice(slot) ? prepareSubtreeAggregates(slot, topologyIndex) : null;
         });
+    }
 
-        return prepareRoots(deviceNodesMap, hasUplinkDevice);
+    public static List<SubtreeAggregates> prepareLargestSubtrees(DeviceTopologyIndex topologyIndex, int limit) {
+        return topologyIndex.readAggregates(() -> Arrays.stream(topologyIndex.largestSubtreeSlots(limit))
+                .mapToObj(slot -> prepareSubtreeAggregates(slot, topologyIndex))
+                .toList());
     }
 
-    private static Map<String, DeviceNode> prepareDeviceNodesMap(List<Device> devices) {
-        Map<String, DeviceNode> deviceNodesMap = new HashMap<>();
-        devices.forEach(device -> {
-            String macAddress = device.getMacAddress();
-            String uplinkDeviceMacAddress = device.getUplinkMacAddress();
-            deviceNodesMap.putIfAbsent(macAddress, new DeviceNode(macAddress));
-            if (uplinkDeviceMacAddress != null) {
-                deviceNodesMap.putIfAbsent(uplinkDeviceMacAddress, new DeviceNode(uplinkDeviceMacAddress));
+    // brings the subtree aggregates up to date ahead of the first request that needs them
+    public static void prepareAggregates(DeviceTopologyIndex topologyIndex) {
+        topologyIndex.readAggregates(() -> null);
+    }
+
+    // Levels of links below the highest root as of the last aggregates update, O(roots). Never recomputes the
+    // aggregates itself, so a metrics scrape cannot stall registrations; -1 while they wait for a recompute.
+    public static int measureDepth(DeviceTopologyIndex topologyIndex) {
+        return topologyIndex.read(() -> {
+            if (!topologyIndex.hasAggregates()) {
+                return -1;
+            }
+            int depth = 0;
+            for (int root = topologyIndex.firstRootSlot(); root != NO_SLOT; root = topologyIndex.nextRootSlotAt(root)) {
+                depth = Math.max(depth, topologyIndex.heightAt(root));
             }
+            return depth;
         });
-        return deviceNodesMap;
     }
 
-    private static List<DeviceNode> prepareRoots(Map<String, DeviceNode> deviceNodesMap, Set<String> hasUplinkDevice) {
-        return deviceNodesMap.entrySet().stream()
-                .filter(entry -> !hasUplinkDevice.contains(entry.getKey()))
-                .map(Map.Entry::getValue)
-                .collect(Collectors.toList());
+    private static SubtreeAggregates prepareSubtreeAggregates(int slot, DeviceTopologyIndex topologyIndex) {
+        Map<DeviceType, Integer> descendantCountsByType = new EnumMap<>(DeviceType.class);
+        for (DeviceType deviceType : DeviceType.values()) {
+            descendantCountsByType.put(deviceType, topologyIndex.descendantCountAt(slot, deviceType));
+        }
+        return SubtreeAggregates.builder()
+                .deviceType(topologyIndex.deviceTypeAt(slot))
+                .macAddress(MacAddress.toString(topologyIndex.macAddressAt(slot)))
+                .descendantCount(topologyIndex.descendantCountAt(slot))
+                .descendantCountsByType(descendantCountsByType)
+                .maxDepthBelow(topologyIndex.heightAt(slot))
+                .build();
+    }
+
+    private static int liftToDepth(int slot, int depth, DeviceTopologyIndex topologyIndex) {
+        while (topologyIndex.depthAt(slot) > depth) {
+            int jumpSlot = topologyIndex.jumpSlotAt(slot);
+            slot = topologyIndex.depthAt(jumpSlot) >= depth ? jumpSlot : topologyIndex.uplinkSlotAt(slot);
+        }
+        return slot;
+    }
+
+    private static DeviceEntry prepareDeviceEntry(int slot, DeviceTopologyIndex topologyIndex) {
+        return DeviceEntry.builder()
+                .deviceType(topologyIndex.deviceTypeAt(slot))
+                .macAddress(MacAddress.toString(topologyIndex.macAddressAt(slot)))
+                .build();
+    }
+
+    public static void writeDeviceTopology(JsonGenerator generator, DeviceTopologyIndex topologyIndex)
+            throws IOException {
+        writeDeviceTopology(generator, topologyIndex.view());
+    }
+
+    public static void writeDeviceTopology(JsonGenerator generator, DeviceTopologyIndex.View view) throws IOException {
+        generator.writeStartArray();
+        for (int slot = 0; slot < view.slotCount(); slot++) {
+            if (view.isRoot(slot)) {
+                writeDeviceNode(generator, slot, view);
+            }
+        }
+        generator.writeEndArray();
+    }
+
+    public static void writeSubDeviceTopology(JsonGenerator generator, MacAddress rootDeviceMacAddress,
+                                              DeviceTopologyIndex topologyIndex) throws IOException {
+        int rootSlot = topologyIndex.read(() -> topologyIndex.slotOfMacAddress(rootDeviceMacAddress.value()));
+        DeviceTopologyIndex.View view = topologyIndex.view();
+        if (view.isDevice(rootSlot)) {
+            writeDeviceNode(generator, rootSlot, view);
+        } else {
+            generator.writeNull();
+        }
+    }
+
+    // same shape and order as the serialized DeviceNode tree, holding only the open path in memory
+    private static void writeDeviceNode(JsonGenerator generator, int rootSlot, DeviceTopologyIndex.View view)
+            throws IOException {
+        int[] pendingSlots = new int[16];
+        int depth = 0;
+        writeDeviceNodeStart(generator, rootSlot, view);
+        pendingSlots[depth++] = view.firstLinkedSlotAt(rootSlot);
+
+        while (depth > 0) {
+            int slot = pendingSlots[depth - 1];
+            if (slot == NO_SLOT) {
+                generator.writeEndArray();
+                generator.writeEndObject();
+                depth--;
+                continue;
+            }
+            pendingSlots[depth - 1] = view.nextLinkedSlotAt(slot);
+            writeDeviceNodeStart(generator, slot, view);
+            if (depth == pendingSlots.length) {
+                pendingSlots = Arrays.copyOf(pendingSlots, depth << 1);
+            }
+            pendingSlots[depth++] = view.firstLinkedSlotAt(slot);
+        }
+    }
+
+    private static void writeDeviceNodeStart(JsonGenerator generator, int slot, DeviceTopologyIndex.View view)
+            throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("macAddress", MacAddress.toString(view.macAddressAt(slot)));
+        generator.writeArrayFieldStart("linkedDevices");
     }
 
     public static void checkUplinkMacAddressExistence(Device device, List<Device> devices) {
-         if (devices.stream()
-                .map(Device::getMacAddress)
-                .noneMatch(macAddress -> macAddress.equals(device.getUplinkMacAddress()))) {
-             throw new DeviceInventoryException("A Device with MAC address " + device.getUplinkMacAddress()
-                     + " does not exist.");
-         }
+        checkUplinkMacAddressExistence(MacAddress.parse(device.getUplinkMacAddress()), DeviceTopologyIndex.of(devices));
+    }
+
+    public static void checkUplinkMacAddressExistence(MacAddress uplinkMacAddress, DeviceTopologyIndex topologyIndex) {
+        if (!topologyIndex.contains(uplinkMacAddress.value())) {
+            throw new DeviceInventoryException(Rule.UPLINK_MISSING, "A Device with MAC address " + uplinkMacAddress
+                    + " does not exist.");
+        }
     }
 
     public static void checkMacAddressUniqueness(Device device, List<Device> devices) {
-        if (devices.stream()
-                .map(Device::getMacAddress)
-                .anyMatch(macAddress -> macAddress.equals(device.getMacAddress()))) {
-            throw new DeviceInventoryException("A Device with MAC address " + device.getMacAddress()
+        checkMacAddressUniqueness(MacAddress.parse(device.getMacAddress()), DeviceTopologyIndex.of(devices));
+    }
+
+    public static void checkMacAddressUniqueness(MacAddress macAddress, DeviceTopologyIndex topologyIndex) {
+        if (topologyIndex.contains(macAddress.value())) {
+            throw new DeviceInventoryException(Rule.DUPLICATE, "A Device with MAC address " + macAddress
                     + " already exists.");
         }
     }
 
     public static void checkUplinkConnection(Device device, List<Device> devices) {
-        if (devices.stream()
-                .anyMatch(deviceFromTopology ->
-                        device.getUplinkMacAddress().equals(deviceFromTopology.getMacAddress())
-                                && DeviceType.ACCESS_POINT.equals(deviceFromTopology.getDeviceType()))) {
-            throw new DeviceInventoryException("An Access Point is supposed to connect wireless Devices.");
+        checkUplinkConnection(MacAddress.parse(device.getUplinkMacAddress()), DeviceTopologyIndex.of(devices));
+    }
+
+    public static void checkUplinkConnection(MacAddress uplinkMacAddress, DeviceTopologyIndex topologyIndex) {
+        if (topologyIndex.findDeviceType(uplinkMacAddress.value())
+                .filter(DeviceType.ACCESS_POINT::equals)
+                .isPresent()) {
+            throw new DeviceInventoryException(Rule.ACCESS_POINT_UPLINK,
+                    "An Access Point is supposed to connect wireless Devices.");
         }
     }
 
-    enum State { UNVISITED, VISITING, VISITED }
 }
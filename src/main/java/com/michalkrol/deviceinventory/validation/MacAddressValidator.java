@@ -1,18 +1,103 @@
 package com.michalkrol.deviceinventory.validation;
 
 import com.michalkrol.deviceinventory.exception.DeviceInventoryException;
+import com.michalkrol.deviceinventory.exception.DeviceInventoryException.Rule;
+
+import java.util.Arrays;
 
 public class MacAddressValidator {
 
+    private static final long INVALID = -1L;
+
+    private static final byte[] UPPERCASE_HEX_VALUES = new byte[128];
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(UPPERCASE_HEX_VALUES, (byte) -1);
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int digit = 0; digit < 16; digit++) {
+            char upperCase = Character.toUpperCase(Character.forDigit(digit, 16));
+            UPPERCASE_HEX_VALUES[upperCase] = (byte) digit;
+            HEX_VALUES[upperCase] = (byte) digit;
+            HEX_VALUES[Character.toLowerCase(upperCase)] = (byte) digit;
+        }
+    }
+
     public static void validateMacAddress(String macAddress) {
+        parseMacAddress(macAddress, false);
+    }
+
+    public static long parseMacAddress(String macAddress) {
+        return parseMacAddress(macAddress, false);
+    }
+
+    public static long parseMacAddress(String macAddress, boolean lenient) {
         if (macAddress == null) {
-            throw new DeviceInventoryException("MAC address cannot be null.");
+            throw new DeviceInventoryException(Rule.MAC_ADDRESS, "MAC address cannot be null.");
+        }
+
+        if (!lenient) {
+            long value = parseSeparated(macAddress, ':', UPPERCASE_HEX_VALUES);
+            if (value == INVALID) {
+                throw new DeviceInventoryException(Rule.MAC_ADDRESS,
+                        "MAC address must comply with XX:XX:XX:XX:XX:XX alphanumerical format.");
+            }
+            return value;
         }
 
-        String regex = "^([0-9A-F]{2}:){5}[0-9A-F]{2}$";
+        long value = switch (macAddress.length()) {
+            case 17 -> parseSeparated(macAddress, macAddress.charAt(2) == '-' ? '-' : ':', HEX_VALUES);
+            case 14 -> parseDotted(macAddress);
+            default -> INVALID;
+        };
+        if (value == INVALID) {
+            throw new DeviceInventoryException(Rule.MAC_ADDRESS,
+                    "MAC address must comply with XX:XX:XX:XX:XX:XX, XX-XX-XX-XX-XX-XX"
+                            + " or XXXX.XXXX.XXXX alphanumerical format.");
+        }
+        return value;
+    }
+
+    // XX:XX:XX:XX:XX:XX, every third character is the separator
+    private static long parseSeparated(String macAddress, char separator, byte[] hexValues) {
+        if (macAddress.length() != 17) {
+            return INVALID;
+        }
+        long value = 0;
+        for (int i = 0; i < 17; i++) {
+            char character = macAddress.charAt(i);
+            if (i % 3 == 2) {
+                if (character != separator) {
+                    return INVALID;
+                }
+                continue;
+            }
+            int digit = character < 128 ? hexValues[character] : -1;
+            if (digit < 0) {
+                return INVALID;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
 
-        if (!macAddress.matches(regex)) {
-            throw new DeviceInventoryException("MAC address must comply with XX:XX:XX:XX:XX:XX alphanumerical format.");
+    // Cisco notation XXXX.XXXX.XXXX
+    private static long parseDotted(String macAddress) {
+        long value = 0;
+        for (int i = 0; i < 14; i++) {
+            char character = macAddress.charAt(i);
+            if (i % 5 == 4) {
+                if (character != '.') {
+                    return INVALID;
+                }
+                continue;
+            }
+            int digit = character < 128 ? HEX_VALUES[character] : -1;
+            if (digit < 0) {
+                return INVALID;
+            }
+            value = (value << 4) | digit;
         }
+        return value;
     }
 }
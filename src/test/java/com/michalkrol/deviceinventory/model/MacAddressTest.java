@@ -0,0 +1,52 @@
+package com.michalkrol.deviceinventory.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.michalkrol.deviceinventory.exception.DeviceInventoryException;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class MacAddressTest {
+
+    @Test
+    void shouldPackMacAddressIntoLong() {
+        assertEquals(0xAABBCCDDEE01L, MacAddress.toLong("AA:BB:CC:DD:EE:01"));
+        assertEquals(0L, MacAddress.toLong("00:00:00:00:00:00"));
+        assertEquals(0xFFFFFFFFFFFFL, MacAddress.toLong("FF:FF:FF:FF:FF:FF"));
+    }
+
+    @Test
+    void shouldFormatLongAsMacAddress() {
+        assertEquals("AA:BB:CC:DD:EE:01", MacAddress.toString(0xAABBCCDDEE01L));
+        assertEquals("00:00:00:00:00:0F", MacAddress.toString(0xFL));
+    }
+
+    @Test
+    void shouldRoundTripThroughTextForm() {
+        MacAddress macAddress = MacAddress.parse("01:23:45:67:89:AB");
+
+        assertEquals("01:23:45:67:89:AB", macAddress.toString());
+        assertEquals(macAddress, new MacAddress(0x0123456789ABL));
+    }
+
+    @Test
+    void shouldOrderLikeTextForm() {
+        assertThat(MacAddress.parse("AA:00:00:00:00:02"))
+                .isGreaterThan(MacAddress.parse("AA:00:00:00:00:01"))
+                .isLessThan(MacAddress.parse("AB:00:00:00:00:00"));
+    }
+
+    @Test
+    void shouldRejectInvalidTextForm() {
+        assertThrows(DeviceInventoryException.class, () -> MacAddress.parse("AA:BB:CC:DD:EE"));
+    }
+
+    @Test
+    void shouldRejectValuesWiderThan48Bits() {
+        assertThrows(IllegalArgumentException.class, () -> new MacAddress(1L << 48));
+        assertThrows(IllegalArgumentException.class, () -> new MacAddress(MacAddress.NONE));
+    }
+}
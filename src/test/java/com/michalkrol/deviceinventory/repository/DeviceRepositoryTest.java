@@ -0,0 +1,70 @@
+package com.michalkrol.deviceinventory.repository;
+
+import static com.michalkrol.deviceinventory.model.DeviceType.SWITCH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.michalkrol.deviceinventory.model.Device;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@SpringBootTest
+class DeviceRepositoryTest {
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Test
+    void existsByMacAddress_shouldFindOnlyRegisteredDevices() {
+        // when & then
+        assertThat(deviceRepository.existsByMacAddress("AA:BB:CC:DD:EE:01")).isTrue();
+        assertThat(deviceRepository.existsByMacAddress("AA:BB:CC:DD:EE:99")).isFalse();
+    }
+
+    @Test
+    void findSubtree_shouldReturnRootAndDescendantsOnly() {
+        // when & then
+        assertThat(deviceRepository.findSubtree("AA:BB:CC:DD:EE:03"))
+                .extracting(Device::getMacAddress)
+                .containsExactly("AA:BB:CC:DD:EE:03", "AA:BB:CC:DD:EE:04", "AA:BB:CC:DD:EE:05");
+    }
+
+    @Test
+    @Transactional
+    void findSorted_shouldLeaveDevicesWithoutTypeToUntypedQuery() {
+        // given
+        Device device = new Device();
+        device.setMacAddress("AA:BB:CC:DD:EE:00");
+        deviceRepository.save(device);
+
+        // when
+        List<Device> sorted = deviceRepository.findSorted(Limit.unlimited());
+        Device lastTyped = sorted.getLast();
+
+        // then
+        assertThat(sorted).extracting(Device::getMacAddress).doesNotContain("AA:BB:CC:DD:EE:00");
+        assertThat(deviceRepository.findSortedAfter(lastTyped.getDeviceType(), lastTyped.getMacAddress(),
+                Limit.unlimited())).isEmpty();
+        assertThat(deviceRepository.findUntypedSortedAfter("", Limit.unlimited()))
+                .extracting(Device::getMacAddress).containsExactly("AA:BB:CC:DD:EE:00");
+        assertThat(deviceRepository.findUntypedSortedAfter("AA:BB:CC:DD:EE:00", Limit.unlimited())).isEmpty();
+    }
+
+    @Test
+    void save_shouldRejectDuplicateMacAddress() {
+        // given
+        Device device = new Device();
+        device.setDeviceType(SWITCH);
+        device.setMacAddress("AA:BB:CC:DD:EE:02");
+        device.setUplinkMacAddress("AA:BB:CC:DD:EE:01");
+
+        // when & then
+        assertThrows(DataIntegrityViolationException.class, () -> deviceRepository.save(device));
+    }
+}
@@ -0,0 +1,234 @@
+package com.michalkrol.deviceinventory.service;
+
+import static com.michalkrol.deviceinventory.model.DeviceType.GATEWAY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michalkrol.deviceinventory.config.DeviceMetrics;
+import com.michalkrol.deviceinventory.config.DeviceProperties;
+import com.michalkrol.deviceinventory.exception.DeviceInventoryException;
+import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.ImportError;
+import com.michalkrol.deviceinventory.model.ImportReport;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.repository.DeviceRepository;
+import com.michalkrol.deviceinventory.service.DeviceImportService.ImportFormat;
+import com.michalkrol.deviceinventory.utils.DeviceTopologyIndex;
+import com.michalkrol.deviceinventory.utils.SortedDeviceIndex;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+@SpringBootTest
+class DeviceImportServiceTest {
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private DeviceMetrics deviceMetrics;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @TempDir
+    private Path importDirectory;
+
+    private Device createDevice(DeviceType deviceType, String macAddress, String uplinkMacAddress) {
+        Device device = new Device();
+        device.setMacAddress(macAddress);
+        device.setUplinkMacAddress(uplinkMacAddress);
+        device.setDeviceType(deviceType);
+        return device;
+    }
+
+    // the import gets its own index below the given gateway, the devices are persisted to the shared test database
+    private DeviceImportService createImportService(DeviceTopologyIndex topologyIndex, int chunkSize,
+                                                    int maxReportedErrors) {
+        DeviceProperties deviceProperties = new DeviceProperties();
+        deviceProperties.getImports().setChunkSize(chunkSize);
+        deviceProperties.getImports().setMaxReportedErrors(maxReportedErrors);
+        deviceProperties.getImports().setDirectory(importDirectory.toString());
+        DeviceService deviceService = new DeviceService(deviceRepository, topologyIndex,
+                new SortedDeviceIndex(topologyIndex), deviceProperties, entityManager, transactionTemplate,
+                deviceMetrics);
+        return new DeviceImportService(deviceService, deviceProperties, objectMapper);
+    }
+
+    private static InputStream lines(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String jsonRow(String deviceType, String macAddress, String uplinkMacAddress) {
+        return "{\"deviceType\":\"" + deviceType + "\",\"macAddress\":\"" + macAddress
+                + "\",\"uplinkMacAddress\":\"" + uplinkMacAddress + "\"}";
+    }
+
+    @Test
+    void importDevices_shouldSkipCsvHeaderAndReportMalformedRows() {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "20:00:00:00:00:00", null)));
+        DeviceImportService importService = createImportService(topologyIndex, 1000, 1000);
+
+        // when
+        ImportReport report = importService.importDevices(lines(
+                "deviceType,macAddress,uplinkMacAddress",
+                "SWITCH,20:00:00:00:00:01,20:00:00:00:00:00",
+                "",
+                "ROUTER,20:00:00:00:00:02,20:00:00:00:00:00",
+                "SWITCH,20:00:00:00:00:03,20:00:00:00:00:00,extra",
+                "\"ACCESS_POINT\",\"20:00:00:00:00:04\",\"20:00:00:00:00:01\""), ImportFormat.CSV, "devices.csv");
+
+        // then
+        assertThat(report.isCompleted()).isTrue();
+        assertThat(report.getProcessed()).isEqualTo(4);
+        assertThat(report.getImported()).isEqualTo(2);
+        assertThat(report.getRejected()).isEqualTo(2);
+        assertThat(report.getErrors()).extracting(ImportError::getLine).containsExactly(4L, 5L);
+        assertThat(report.getErrors().getFirst().getMessage()).isEqualTo("Unknown device type ROUTER.");
+        assertThat(topologyIndex.contains(MacAddress.toLong("20:00:00:00:00:04"))).isTrue();
+    }
+
+    @Test
+    void importDevices_shouldImportFirstCsvRowWithoutHeader() {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "21:00:00:00:00:00", null)));
+        DeviceImportService importService = createImportService(topologyIndex, 1000, 1000);
+
+        // when
+        ImportReport report = importService.importDevices(lines("SWITCH,21:00:00:00:00:01,21:00:00:00:00:00"),
+                ImportFormat.CSV, "devices.csv");
+
+        // then
+        assertThat(report.getProcessed()).isEqualTo(1);
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getErrors()).isEmpty();
+    }
+
+    @Test
+    void importDevices_shouldReportLinesOfMalformedJsonRows() {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "22:00:00:00:00:00", null)));
+        DeviceImportService importService = createImportService(topologyIndex, 1000, 1000);
+
+        // when
+        ImportReport report = importService.importDevices(lines(
+                jsonRow("SWITCH", "22:00:00:00:00:01", "22:00:00:00:00:00"),
+                "{\"deviceType\":\"SWITCH\",\"macAddress\":",
+                "",
+                jsonRow("ROUTER", "22:00:00:00:00:02", "22:00:00:00:00:00"),
+                jsonRow("SWITCH", "22:00:00:00:00:03", "22:00:00:00:00:00")),
+                ImportFormat.NDJSON, "devices.ndjson");
+
+        // then
+        assertThat(report.getProcessed()).isEqualTo(4);
+        assertThat(report.getImported()).isEqualTo(2);
+        assertThat(report.getErrors()).extracting(ImportError::getLine).containsExactly(2L, 4L);
+        assertThat(report.getErrors()).extracting(ImportError::getMessage)
+                .allSatisfy(message -> assertThat(message).startsWith("Invalid JSON: "));
+    }
+
+    @Test
+    void importDevices_shouldKeepCommittedChunksAndMapBatchErrorsToLines() {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "23:00:00:00:00:00", null)));
+        DeviceImportService importService = createImportService(topologyIndex, 2, 1000);
+
+        // when
+        ImportReport report = importService.importDevices(lines(
+                "SWITCH,23:00:00:00:00:01,23:00:00:00:00:00",
+                "SWITCH,23:00:00:00:00:02,23:00:00:00:00:01",
+                "SWITCH,23:00:00:00:00:03,23:00:00:00:00:02",
+                "SWITCH,23:00:00:00:00:01,23:00:00:00:00:00",
+                "SWITCH,23:00:00:00:00:04,23:00:00:00:00:99"), ImportFormat.CSV, "devices.csv");
+
+        // then
+        assertThat(report.getProcessed()).isEqualTo(5);
+        assertThat(report.getImported()).isEqualTo(3);
+        assertThat(report.getErrors()).extracting(ImportError::getLine).containsExactly(4L, 5L);
+        assertThat(report.getErrors()).extracting(ImportError::getMacAddress)
+                .containsExactly("23:00:00:00:00:01", "23:00:00:00:00:04");
+        assertThat(topologyIndex.getLinkedMacAddresses(MacAddress.toLong("23:00:00:00:00:02")))
+                .containsExactly(MacAddress.toLong("23:00:00:00:00:03"));
+        assertThat(deviceRepository.existsByMacAddress("23:00:00:00:00:03")).isTrue();
+    }
+
+    @Test
+    void importDevices_shouldTruncateReportedErrors() {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "24:00:00:00:00:00", null)));
+        DeviceImportService importService = createImportService(topologyIndex, 1000, 2);
+
+        // when
+        ImportReport report = importService.importDevices(lines("a", "b", "c", "d"), ImportFormat.CSV,
+                "devices.csv");
+
+        // then
+        assertThat(report.getRejected()).isEqualTo(4);
+        assertThat(report.getErrors()).extracting(ImportError::getLine).containsExactly(1L, 2L);
+        assertThat(report.isErrorsTruncated()).isTrue();
+    }
+
+    @Test
+    void importDevicesFromFile_shouldReadFileInsideImportDirectory() throws IOException {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "25:00:00:00:00:00", null)));
+        DeviceImportService importService = createImportService(topologyIndex, 1000, 1000);
+        Files.createDirectories(importDirectory.resolve("nested"));
+        Files.writeString(importDirectory.resolve("nested/devices.csv"),
+                "deviceType,macAddress,uplinkMacAddress\nSWITCH,25:00:00:00:00:01,25:00:00:00:00:00\n");
+
+        // when
+        ImportReport report = importService.importDevicesFromFile("nested/../nested/devices.csv");
+
+        // then
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getSource()).isEqualTo(importDirectory.resolve("nested/devices.csv").toString());
+    }
+
+    @Test
+    void importDevicesFromFile_shouldRejectPathsOutsideImportDirectory() throws IOException {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "26:00:00:00:00:00", null)));
+        DeviceImportService importService = createImportService(topologyIndex, 1000, 1000);
+        Path outsideFile = Files.createTempFile("devices", ".csv");
+        String absolutePath = outsideFile.toAbsolutePath().toString();
+
+        try {
+            // when & then
+            DeviceInventoryException relative = assertThrows(DeviceInventoryException.class,
+                    () -> importService.importDevicesFromFile("../devices.csv"));
+            DeviceInventoryException absolute = assertThrows(DeviceInventoryException.class,
+                    () -> importService.importDevicesFromFile(absolutePath));
+
+            assertEquals("Import file ../devices.csv is outside of the import directory.", relative.getMessage());
+            assertEquals("Import file " + absolutePath + " is outside of the import directory.",
+                    absolute.getMessage());
+        } finally {
+            Files.delete(outsideFile);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.michalkrol.deviceinventory.service;
+
+import static com.michalkrol.deviceinventory.model.DeviceType.GATEWAY;
+import static com.michalkrol.deviceinventory.model.DeviceType.SWITCH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+import com.michalkrol.deviceinventory.config.DeviceMetrics;
+import com.michalkrol.deviceinventory.config.DeviceProperties;
+import com.michalkrol.deviceinventory.exception.DeviceInventoryException;
+import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.repository.DeviceRepository;
+import com.michalkrol.deviceinventory.utils.DeviceTopologyIndex;
+import com.michalkrol.deviceinventory.utils.SortedDeviceIndex;
+import com.michalkrol.deviceinventory.utils.TopologyUtils;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@SpringBootTest
+class DeviceServiceConcurrencyTest {
+
+    private static final int THREADS = 8;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+    @Autowired
+    private DeviceProperties deviceProperties;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private DeviceMetrics deviceMetrics;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private Device createDevice(DeviceType deviceType, String macAddress, String uplinkMacAddress) {
+        Device device = new Device();
+        device.setMacAddress(macAddress);
+        device.setUplinkMacAddress(uplinkMacAddress);
+        device.setDeviceType(deviceType);
+        return device;
+    }
+
+    // the service gets its own index, the devices are persisted to the shared test database
+    private DeviceService createService(DeviceTopologyIndex topologyIndex) {
+        return new DeviceService(deviceRepository, topologyIndex, new SortedDeviceIndex(topologyIndex), deviceProperties,
+                entityManager, transactionTemplate, deviceMetrics);
+    }
+
+    // all tasks are released at once to maximize the overlap of their checks
+    private List<Future<Device>> runConcurrently(List<Callable<Device>> tasks) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Device>> futures = new ArrayList<>();
+        for (Callable<Device> task : tasks) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+        return futures;
+    }
+
+    private int countSucceeded(List<Future<Device>> futures) throws InterruptedException {
+        int succeeded = 0;
+        for (Future<Device> future : futures) {
+            try {
+                future.get();
+                succeeded++;
+            } catch (ExecutionException exception) {
+                assertThat(exception.getCause()).isInstanceOf(DeviceInventoryException.class);
+            }
+        }
+        return succeeded;
+    }
+
+    @Test
+    void save_shouldRegisterAllDistinctDevicesFromParallelWriters() throws InterruptedException {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "10:00:00:00:00:00", null)));
+        DeviceService deviceService = createService(topologyIndex);
+        List<Callable<Device>> tasks = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int first = (thread + 1) * 1000;
+            tasks.add(() -> {
+                for (int device = first; device < first + 200; device++) {
+                    deviceService.save(createDevice(SWITCH, MacAddress.toString(0x10_0000_000000L + device),
+                            "10:00:00:00:00:00"));
+                }
+                return null;
+            });
+        }
+
+        // when
+        int succeeded = countSucceeded(runConcurrently(tasks));
+
+        // then
+        assertThat(succeeded).isEqualTo(THREADS);
+        assertThat(topologyIndex.size()).isEqualTo(1 + THREADS * 200);
+        assertThat(topologyIndex.getLinkedMacAddresses(MacAddress.toLong("10:00:00:00:00:00"))).hasSize(THREADS * 200);
+    }
+
+    @Test
+    void save_shouldRegisterSameMacAddressOnlyOnce() throws InterruptedException {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "11:00:00:00:00:00", null)));
+        DeviceService deviceService = createService(topologyIndex);
+        List<Callable<Device>> tasks = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            tasks.add(() -> deviceService.save(createDevice(SWITCH, "11:00:00:00:00:01", "11:00:00:00:00:00")));
+        }
+
+        // when
+        int succeeded = countSucceeded(runConcurrently(tasks));
+
+        // then
+        assertThat(succeeded).isEqualTo(1);
+        assertThat(deviceRepository.findByMacAddress("11:00:00:00:00:01")).isPresent();
+        assertThat(topologyIndex.size()).isEqualTo(2);
+    }
+
+    @Test
+    void save_shouldNeverCloseCycleWithConcurrentPlaceholderLinks() throws InterruptedException {
+        for (int round = 0; round < 100; round++) {
+            // given
+            String prefix = String.format("12:00:%02X:00:00:", round);
+            // two placeholders, each heading a switch the other one is linked to
+            DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                    createDevice(SWITCH, prefix + "11", prefix + "01"),
+                    createDevice(SWITCH, prefix + "12", prefix + "02")));
+            DeviceService deviceService = createService(topologyIndex);
+
+            // when
+            int succeeded = countSucceeded(runConcurrently(List.of(
+                    () -> deviceService.save(createDevice(SWITCH, prefix + "01", prefix + "12")),
+                    () -> deviceService.save(createDevice(SWITCH, prefix + "02", prefix + "11")))));
+
+            // then
+            assertThat(succeeded).isEqualTo(1);
+            assertDoesNotThrow(() -> TopologyUtils.validateNoCycles(topologyIndex));
+        }
+    }
+}
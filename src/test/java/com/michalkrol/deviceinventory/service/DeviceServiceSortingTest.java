@@ -0,0 +1,186 @@
+package com.michalkrol.deviceinventory.service;
+
+import static com.michalkrol.deviceinventory.model.DeviceType.ACCESS_POINT;
+import static com.michalkrol.deviceinventory.model.DeviceType.GATEWAY;
+import static com.michalkrol.deviceinventory.model.DeviceType.SWITCH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michalkrol.deviceinventory.config.DeviceMetrics;
+import com.michalkrol.deviceinventory.config.DeviceProperties;
+import com.michalkrol.deviceinventory.exception.DeviceInventoryException;
+import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceEntry;
+import com.michalkrol.deviceinventory.model.DevicePage;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.repository.DeviceRepository;
+import com.michalkrol.deviceinventory.utils.DeviceTopologyIndex;
+import com.michalkrol.deviceinventory.utils.SortedDeviceIndex;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class DeviceServiceSortingTest {
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+    @Autowired
+    private DeviceProperties deviceProperties;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private DeviceMetrics deviceMetrics;
+    @Autowired
+    private DeviceService deviceService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private MockMvc mockMvc;
+
+    private Device createDevice(DeviceType deviceType, String macAddress, String uplinkMacAddress) {
+        Device device = new Device();
+        device.setMacAddress(macAddress);
+        device.setUplinkMacAddress(uplinkMacAddress);
+        device.setDeviceType(deviceType);
+        return device;
+    }
+
+    // pages are read from the given index once it is loaded and from the shared test database before
+    private DeviceService createService(DeviceTopologyIndex topologyIndex) {
+        return new DeviceService(deviceRepository, topologyIndex, new SortedDeviceIndex(topologyIndex),
+                deviceProperties, entityManager, transactionTemplate, deviceMetrics);
+    }
+
+    private DeviceTopologyIndex createInventoryWithUntypedDevices() {
+        return DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "30:00:00:00:00:01", null),
+                createDevice(SWITCH, "30:00:00:00:00:02", "30:00:00:00:00:01"),
+                createDevice(null, "30:00:00:00:00:03", "30:00:00:00:00:02"),
+                createDevice(ACCESS_POINT, "30:00:00:00:00:04", "30:00:00:00:00:02"),
+                createDevice(null, "30:00:00:00:00:05", "30:00:00:00:00:02")));
+    }
+
+    private static List<DeviceEntry> readAllPages(DeviceService deviceService, int size) {
+        List<DeviceEntry> devices = new ArrayList<>();
+        String cursor = null;
+        do {
+            DevicePage page = deviceService.findSortedPage(cursor, null, size);
+            devices.addAll(page.getDevices());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return devices;
+    }
+
+    @Test
+    void findSortedPage_shouldContinueAfterCursorAndEndWithoutNextCursor() {
+        // given
+        DeviceService sortingService = createService(createInventoryWithUntypedDevices());
+
+        // when
+        DevicePage firstPage = sortingService.findSortedPage(null, null, 2);
+        DevicePage secondPage = sortingService.findSortedPage(firstPage.getNextCursor(), null, 2);
+        DevicePage lastPage = sortingService.findSortedPage(secondPage.getNextCursor(), null, 2);
+
+        // then
+        assertThat(firstPage.getDevices()).extracting(DeviceEntry::getMacAddress)
+                .containsExactly("30:00:00:00:00:01", "30:00:00:00:00:02");
+        assertThat(secondPage.getDevices()).extracting(DeviceEntry::getMacAddress)
+                .containsExactly("30:00:00:00:00:04", "30:00:00:00:00:03");
+        assertThat(lastPage.getDevices()).extracting(DeviceEntry::getMacAddress)
+                .containsExactly("30:00:00:00:00:05");
+        assertThat(lastPage.getNextCursor()).isNull();
+        assertThat(sortingService.findSortedPage(null, null, 5).getNextCursor()).isNull();
+    }
+
+    @Test
+    void findSortedPage_shouldRejectPageSizesOutOfBounds() {
+        // given
+        DeviceService sortingService = createService(createInventoryWithUntypedDevices());
+
+        // when & then
+        DeviceInventoryException tooSmall = assertThrows(DeviceInventoryException.class,
+                () -> sortingService.findSortedPage(null, null, 0));
+        assertThrows(DeviceInventoryException.class, () -> sortingService.findSortedPage(null, null, 1001));
+
+        assertEquals("Page size must be between 1 and 1000.", tooSmall.getMessage());
+        assertThat(sortingService.findSortedPage(null, null, 1000).getDevices()).hasSize(5);
+    }
+
+    @Test
+    void findSortedPage_shouldRejectMalformedCursor() throws Exception {
+        // given
+        DeviceService sortingService = createService(createInventoryWithUntypedDevices());
+
+        // when & then
+        DeviceInventoryException ex = assertThrows(DeviceInventoryException.class,
+                () -> sortingService.findSortedPage("bm90LWEtY3Vyc29y", null, 2));
+
+        assertEquals("Invalid page cursor bm90LWEtY3Vyc29y.", ex.getMessage());
+        mockMvc.perform(get("/api/device/getDevicesSortedPage").param("cursor", "%%%"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/device/getDevicesSortedPage").param("size", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    void findSortedPage_beforeLoad_shouldMatchIndexAcrossDevicesWithoutType() {
+        // given
+        createInventoryWithUntypedDevices().getDevices().forEach(deviceRepository::save);
+        DeviceService databaseService = createService(new DeviceTopologyIndex());
+        DeviceService indexService = createService(DeviceTopologyIndex.of(deviceRepository.findAll()));
+
+        // when
+        List<DeviceEntry> fromDatabase = readAllPages(databaseService, 2);
+        List<DeviceEntry> fromIndex = readAllPages(indexService, 2);
+
+        // then
+        assertThat(fromDatabase).isEqualTo(fromIndex);
+        assertThat(fromDatabase.subList(fromDatabase.size() - 2, fromDatabase.size()))
+                .extracting(DeviceEntry::getMacAddress)
+                .containsExactly("30:00:00:00:00:03", "30:00:00:00:00:05");
+    }
+
+    @Test
+    void streamSortedDevices_shouldWriteOneDevicePerLineInSortedOrder() throws Exception {
+        // given
+        MvcResult started = mockMvc.perform(get("/api/device/getAllDevicesSorted/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // when
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        // then
+        assertThat(started.getResponse().getContentType()).isEqualTo(MediaType.APPLICATION_NDJSON_VALUE);
+        List<DeviceEntry> streamed = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            if (!line.isBlank()) {
+                streamed.add(objectMapper.readValue(line, DeviceEntry.class));
+            }
+        }
+        assertThat(streamed).isEqualTo(deviceService.findAllSorted());
+    }
+}
@@ -0,0 +1,83 @@
+package com.michalkrol.deviceinventory.service;
+
+import static com.michalkrol.deviceinventory.model.DeviceType.GATEWAY;
+import static com.michalkrol.deviceinventory.model.DeviceType.SWITCH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.michalkrol.deviceinventory.config.DeviceMetrics;
+import com.michalkrol.deviceinventory.config.DeviceProperties;
+import com.michalkrol.deviceinventory.exception.DeviceInventoryException;
+import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceNode;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.repository.DeviceRepository;
+import com.michalkrol.deviceinventory.utils.DeviceTopologyIndex;
+import com.michalkrol.deviceinventory.utils.SortedDeviceIndex;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+@SpringBootTest
+class DeviceServiceTopologyTest {
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+    @Autowired
+    private DeviceProperties deviceProperties;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private DeviceMetrics deviceMetrics;
+
+    private Device createDevice(DeviceType deviceType, String macAddress, String uplinkMacAddress) {
+        Device device = new Device();
+        device.setMacAddress(macAddress);
+        device.setUplinkMacAddress(uplinkMacAddress);
+        device.setDeviceType(deviceType);
+        return device;
+    }
+
+    // the service gets its own index, loaded from the shared test database
+    private DeviceService createService(DeviceTopologyIndex topologyIndex) {
+        return new DeviceService(deviceRepository, topologyIndex, new SortedDeviceIndex(topologyIndex),
+                deviceProperties, entityManager, transactionTemplate, deviceMetrics);
+    }
+
+    @Test
+    @Transactional
+    void loadTopology_shouldLeaveStoredCycleOutAndServeRestOfTopology() {
+        // given
+        // written directly, as rows stored before registrations were checked for cycles
+        List.of(createDevice(GATEWAY, "40:00:00:00:00:01", null),
+                createDevice(SWITCH, "40:00:00:00:00:02", "40:00:00:00:00:01"),
+                createDevice(SWITCH, "40:00:00:00:00:03", "40:00:00:00:00:04"),
+                createDevice(SWITCH, "40:00:00:00:00:04", "40:00:00:00:00:03"),
+                createDevice(SWITCH, "40:00:00:00:00:05", "40:00:00:00:00:04"))
+                .forEach(deviceRepository::save);
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        DeviceService deviceService = createService(topologyIndex);
+
+        // when
+        deviceService.loadTopology();
+
+        // then
+        DeviceNode root = deviceService.getSubDeviceTopology(MacAddress.parse("40:00:00:00:00:01"), null, null, null);
+        assertThat(root.getLinkedDevices()).extracting(DeviceNode::getMacAddress)
+                .containsExactly("40:00:00:00:00:02");
+        assertThat(topologyIndex.contains(MacAddress.toLong("40:00:00:00:00:03"))).isFalse();
+        assertThat(topologyIndex.contains(MacAddress.toLong("40:00:00:00:00:05"))).isFalse();
+        assertThat(deviceService.getTopology(null, null, null)).extracting(DeviceNode::getMacAddress)
+                .doesNotContain("40:00:00:00:00:03", "40:00:00:00:00:04", "40:00:00:00:00:05");
+        assertThrows(DeviceInventoryException.class,
+                () -> deviceService.checkDeviceExists(MacAddress.parse("40:00:00:00:00:04")));
+    }
+}
@@ -0,0 +1,78 @@
+package com.michalkrol.deviceinventory.service;
+
+import static com.michalkrol.deviceinventory.model.DeviceType.ACCESS_POINT;
+import static com.michalkrol.deviceinventory.model.DeviceType.SWITCH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.utils.DeviceTopologyIndex;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.Duration;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class TopologyEventServiceTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private DeviceTopologyIndex topologyIndex;
+    @Autowired
+    private TopologyEventService topologyEventService;
+
+    private MvcResult subscribe(String query) throws Exception {
+        return mockMvc.perform(get("/api/device/events" + query))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    @Test
+    void subscribe_shouldStreamDevicesAddedAfterTheGivenSequence() throws Exception {
+        // given
+        long version = topologyIndex.version();
+        topologyIndex.add(MacAddress.toLong("AA:BB:CC:EE:00:01"), SWITCH, MacAddress.toLong("AA:BB:CC:DD:EE:01"));
+        MvcResult result = subscribe("?since=" + version);
+
+        // when
+        topologyIndex.add(MacAddress.toLong("AA:BB:CC:EE:00:02"), ACCESS_POINT, MacAddress.toLong("AA:BB:CC:EE:00:01"));
+
+        // then
+        MockHttpServletResponse response = result.getResponse();
+        await().atMost(Duration.ofSeconds(5))
+                .until(() -> response.getContentAsString().contains("AA:BB:CC:EE:00:02"));
+        assertThat(response.getContentType()).startsWith("text/event-stream");
+        assertThat(response.getContentAsString()).containsSubsequence(
+                "id:" + (version + 1), "event:device-added",
+                "\"sequence\":" + (version + 1) + ",\"deviceType\":\"SWITCH\",\"macAddress\":\"AA:BB:CC:EE:00:01\","
+                        + "\"uplinkMacAddress\":\"AA:BB:CC:DD:EE:01\"",
+                "id:" + (version + 2), "event:device-added", "\"macAddress\":\"AA:BB:CC:EE:00:02\"");
+    }
+
+    @Test
+    void subscribe_shouldAskForResyncWhenSequenceIsNoLongerAvailable() throws Exception {
+        // given
+        int subscribers = topologyEventService.getSubscriberCount();
+
+        // when
+        MvcResult behindLoad = subscribe("?since=0");
+        MvcResult ahead = subscribe("?since=" + (topologyIndex.version() + 100));
+
+        // then
+        for (MvcResult result : new MvcResult[]{behindLoad, ahead}) {
+            await().atMost(Duration.ofSeconds(5))
+                    .until(() -> result.getResponse().getContentAsString().startsWith("event:resync"));
+            assertThat(result.getResponse().getContentAsString()).contains("data:" + topologyIndex.version());
+        }
+        assertThat(topologyEventService.getSubscriberCount()).isEqualTo(subscribers);
+    }
+}
@@ -0,0 +1,132 @@
+package com.michalkrol.deviceinventory.service;
+
+import static com.michalkrol.deviceinventory.model.DeviceType.GATEWAY;
+import static com.michalkrol.deviceinventory.model.DeviceType.SWITCH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.michalkrol.deviceinventory.config.DeviceMetrics;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.service.TopologySnapshotService.TopologySnapshot;
+import com.michalkrol.deviceinventory.utils.DeviceTopologyIndex;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class TopologySnapshotServiceTest {
+
+    private static final long MAC_01 = MacAddress.toLong("AA:BB:CC:DD:EE:01");
+    private static final long MAC_02 = MacAddress.toLong("AA:BB:CC:DD:EE:02");
+
+    @Autowired
+    private DeviceMetrics deviceMetrics;
+    @Autowired
+    private MockMvc mockMvc;
+
+    private MockHttpServletResponse getTopology(String accept, String acceptEncoding, String eTag) throws Exception {
+        return mockMvc.perform(get("/api/device/getTopology")
+                        .header(HttpHeaders.ACCEPT, accept)
+                        .header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding)
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andReturn()
+                .getResponse();
+    }
+
+    @Test
+    void getTopologySnapshot_shouldReuseSnapshotUntilInventoryChanges() {
+        // given
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        topologyIndex.add(MAC_01, GATEWAY, MacAddress.NONE);
+        TopologySnapshotService snapshotService = new TopologySnapshotService(topologyIndex, new JsonFactory(), deviceMetrics);
+
+        // when
+        TopologySnapshot first = snapshotService.getTopologySnapshot();
+        TopologySnapshot unchanged = snapshotService.getTopologySnapshot();
+        topologyIndex.add(MAC_02, SWITCH, MAC_01);
+        TopologySnapshot changed = snapshotService.getTopologySnapshot();
+
+        // then
+        assertThat(unchanged).isSameAs(first);
+        assertThat(changed.getETag()).isNotEqualTo(first.getETag()).isEqualTo(snapshotService.getCurrentETag(TopologySnapshotService.JSON_REPRESENTATION));
+        assertThat(new String(changed.getJson(), StandardCharsets.UTF_8)).isEqualTo("[{\"macAddress\":\"AA:BB:CC:DD:EE:01\","
+                + "\"linkedDevices\":[{\"macAddress\":\"AA:BB:CC:DD:EE:02\",\"linkedDevices\":[]}]}]");
+    }
+
+    @Test
+    void getGzippedJson_shouldDecompressToJson() throws IOException {
+        // given
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        topologyIndex.add(MAC_01, GATEWAY, MacAddress.NONE);
+        TopologySnapshot snapshot = new TopologySnapshotService(topologyIndex, new JsonFactory(), deviceMetrics).getTopologySnapshot();
+
+        // when
+        byte[] json;
+        try (GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(snapshot.getGzippedJson()))) {
+            json = inputStream.readAllBytes();
+        }
+
+        // then
+        assertThat(json).isEqualTo(snapshot.getJson());
+    }
+
+    @Test
+    void getTopology_shouldOnlyAnswerNotModifiedForSameRepresentation() throws Exception {
+        // given
+        String jsonETag = mockMvc.perform(get("/api/device/getTopology"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+
+        // when
+        MockHttpServletResponse json = getTopology("application/json", "identity", jsonETag);
+        MockHttpServletResponse gzip = getTopology("application/json", "gzip", jsonETag);
+        MockHttpServletResponse cbor = getTopology("application/cbor", "identity", jsonETag);
+        MockHttpServletResponse packed = getTopology("application/x-device-topology", "identity", jsonETag);
+        MockHttpServletResponse packedAgain = getTopology("application/x-device-topology", "identity",
+                packed.getHeader(HttpHeaders.ETAG));
+
+        // then
+        assertThat(json.getStatus()).isEqualTo(304);
+        assertThat(json.getHeader(HttpHeaders.VARY)).isEqualTo("Accept, Accept-Encoding");
+        for (MockHttpServletResponse response : new MockHttpServletResponse[]{gzip, cbor, packed}) {
+            assertThat(response.getStatus()).isEqualTo(200);
+            assertThat(response.getHeader(HttpHeaders.ETAG)).isNotEqualTo(jsonETag);
+            assertThat(response.getHeader(HttpHeaders.VARY)).isEqualTo("Accept, Accept-Encoding");
+        }
+        assertThat(cbor.getHeader(HttpHeaders.ETAG)).isNotEqualTo(packed.getHeader(HttpHeaders.ETAG));
+        assertThat(packedAgain.getStatus()).isEqualTo(304);
+    }
+
+    @Test
+    void getSubDeviceTopology_shouldRejectUnknownRootBeforeComparingETag() throws Exception {
+        // given
+        String eTag = mockMvc.perform(get("/api/device/getTopology"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+
+        // when & then
+        mockMvc.perform(get("/api/device/getSubDeviceTopology/{macAddress}", "AA:BB:CC:DD:EE:FF")
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/device/getSubDeviceTopology/{macAddress}", "AA:BB:CC:DD:EE:FF")
+                        .param("maxDepth", "1")
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isBadRequest());
+    }
+}
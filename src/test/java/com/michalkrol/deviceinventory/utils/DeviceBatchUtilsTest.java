@@ -0,0 +1,202 @@
+package com.michalkrol.deviceinventory.utils;
+
+import static com.michalkrol.deviceinventory.model.DeviceType.ACCESS_POINT;
+import static com.michalkrol.deviceinventory.model.DeviceType.GATEWAY;
+import static com.michalkrol.deviceinventory.model.DeviceType.SWITCH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.michalkrol.deviceinventory.exception.DeviceInventoryException;
+import com.michalkrol.deviceinventory.model.BulkRegistrationError;
+import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.utils.DeviceBatchUtils.DeviceBatch;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+@SpringBootTest
+class DeviceBatchUtilsTest {
+
+    private Device createDevice(DeviceType deviceType, String macAddress, String uplinkMacAddress) {
+        Device device = new Device();
+        device.setMacAddress(macAddress);
+        device.setUplinkMacAddress(uplinkMacAddress);
+        device.setDeviceType(deviceType);
+        return device;
+    }
+
+    private DeviceTopologyIndex createInventory() {
+        return DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:01", null),
+                createDevice(ACCESS_POINT, "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:01")
+        ));
+    }
+
+    @Test
+    void prepareBatch_shouldOrderDevicesAfterTheirUplinks() {
+        // given
+        List<Device> devices = List.of(
+                createDevice(ACCESS_POINT, "AA:BB:CC:00:00:03", "AA:BB:CC:00:00:02"),
+                createDevice(SWITCH, "AA:BB:CC:00:00:02", "AA:BB:CC:00:00:01"),
+                createDevice(SWITCH, "AA:BB:CC:00:00:01", "AA:BB:CC:DD:EE:01")
+        );
+
+        // when
+        DeviceBatch batch = DeviceBatchUtils.prepareBatch(devices, createInventory(), false);
+
+        // then
+        assertThat(batch.errors()).isEmpty();
+        assertThat(batch.devices()).extracting(Device::getMacAddress)
+                .containsExactly("AA:BB:CC:00:00:01", "AA:BB:CC:00:00:02", "AA:BB:CC:00:00:03");
+    }
+
+    @Test
+    void prepareBatch_shouldRejectDuplicatesAgainstInventoryAndWithinBatch() {
+        // given
+        List<Device> devices = List.of(
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:01", "AA:BB:CC:DD:EE:01"),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:01"),
+                createDevice(SWITCH, "AA:BB:CC:00:00:01", "AA:BB:CC:DD:EE:01"),
+                createDevice(SWITCH, "AA:BB:CC:00:00:01", "AA:BB:CC:DD:EE:01")
+        );
+
+        // when
+        DeviceBatch batch = DeviceBatchUtils.prepareBatch(devices, createInventory(), false);
+
+        // then
+        assertThat(batch.devices()).extracting(Device::getMacAddress).containsExactly("AA:BB:CC:00:00:01");
+        assertThat(batch.errors()).extracting(BulkRegistrationError::getIndex, BulkRegistrationError::getMessage)
+                .containsExactly(
+                        tuple(0, "MAC address must be different from the uplink MAC address"),
+                        tuple(1, "A Device with MAC address AA:BB:CC:DD:EE:02 already exists."),
+                        tuple(3, "A Device with MAC address AA:BB:CC:00:00:01 already exists."));
+    }
+
+    @Test
+    void prepareBatch_shouldRejectSubtreeOfRejectedUplink() {
+        // given
+        List<Device> devices = List.of(
+                createDevice(SWITCH, "AA:BB:CC:00:00:01", "AA:BB:CC:99:99:99"),
+                createDevice(SWITCH, "AA:BB:CC:00:00:02", "AA:BB:CC:00:00:01"),
+                createDevice(SWITCH, "AA:BB:CC:00:00:03", "AA:BB:CC:DD:EE:01")
+        );
+
+        // when
+        DeviceBatch batch = DeviceBatchUtils.prepareBatch(devices, createInventory(), false);
+
+        // then
+        assertThat(batch.devices()).extracting(Device::getMacAddress).containsExactly("AA:BB:CC:00:00:03");
+        assertThat(batch.errors()).extracting(BulkRegistrationError::getIndex, BulkRegistrationError::getMessage)
+                .containsExactly(
+                        tuple(0, "A Device with MAC address AA:BB:CC:99:99:99 does not exist."),
+                        tuple(1, "A Device with MAC address AA:BB:CC:00:00:01 does not exist."));
+    }
+
+    @Test
+    void prepareBatch_shouldRejectAccessPointUplinksInInventoryAndBatch() {
+        // given
+        List<Device> devices = List.of(
+                createDevice(SWITCH, "AA:BB:CC:00:00:01", "AA:BB:CC:DD:EE:02"),
+                createDevice(ACCESS_POINT, "AA:BB:CC:00:00:02", "AA:BB:CC:DD:EE:01"),
+                createDevice(SWITCH, "AA:BB:CC:00:00:03", "AA:BB:CC:00:00:02")
+        );
+
+        // when
+        DeviceBatch batch = DeviceBatchUtils.prepareBatch(devices, createInventory(), false);
+
+        // then
+        assertThat(batch.devices()).extracting(Device::getMacAddress).containsExactly("AA:BB:CC:00:00:02");
+        assertThat(batch.errors()).extracting(BulkRegistrationError::getIndex, BulkRegistrationError::getMessage)
+                .containsExactly(
+                        tuple(0, "An Access Point is supposed to connect wireless Devices."),
+                        tuple(2, "An Access Point is supposed to connect wireless Devices."));
+    }
+
+    @Test
+    void prepareBatch_shouldRejectCyclesWithinBatch() {
+        // given
+        List<Device> devices = List.of(
+                createDevice(SWITCH, "AA:BB:CC:00:00:01", "AA:BB:CC:00:00:02"),
+                createDevice(SWITCH, "AA:BB:CC:00:00:02", "AA:BB:CC:00:00:01")
+        );
+
+        // when
+        DeviceBatch batch = DeviceBatchUtils.prepareBatch(devices, createInventory(), false);
+
+        // then
+        assertThat(batch.devices()).isEmpty();
+        assertThat(batch.errors()).extracting(BulkRegistrationError::getMessage)
+                .containsExactly(
+                        "Linking AA:BB:CC:00:00:01 to AA:BB:CC:00:00:02 would create a cycle in the topology.",
+                        "Linking AA:BB:CC:00:00:02 to AA:BB:CC:00:00:01 would create a cycle in the topology.");
+    }
+
+    @Test
+    void prepareBatch_shouldReportInvalidMacAddressesAndNormalizeLenientOnes() {
+        // given
+        List<Device> devices = List.of(
+                createDevice(SWITCH, "not a mac", "AA:BB:CC:DD:EE:01"),
+                createDevice(SWITCH, "aabb.cc00.0001", "aa-bb-cc-dd-ee-01")
+        );
+
+        // when
+        DeviceBatch batch = DeviceBatchUtils.prepareBatch(devices, createInventory(), true);
+
+        // then
+        assertThat(batch.errors()).extracting(BulkRegistrationError::getIndex, BulkRegistrationError::getMacAddress)
+                .containsExactly(tuple(0, "not a mac"));
+        assertThat(batch.devices()).extracting(Device::getMacAddress, Device::getUplinkMacAddress)
+                .containsExactly(tuple("AA:BB:CC:00:00:01", "AA:BB:CC:DD:EE:01"));
+    }
+
+    @Test
+    void validateSeed_shouldAcceptPlaceholdersAndNormalizeMacAddresses() {
+        // given
+        List<Device> devices = List.of(
+                createDevice(SWITCH, "aa-bb-cc-00-00-02", "AA:BB:CC:00:00:01"),
+                createDevice(GATEWAY, "AA:BB:CC:00:00:01", ""),
+                createDevice(ACCESS_POINT, "AA:BB:CC:00:00:03", "AA:BB:CC:99:99:99")
+        );
+
+        // when & then
+        assertDoesNotThrow(() -> DeviceBatchUtils.validateSeed(devices, true));
+        assertThat(devices).extracting(Device::getMacAddress, Device::getUplinkMacAddress)
+                .containsExactly(
+                        tuple("AA:BB:CC:00:00:02", "AA:BB:CC:00:00:01"),
+                        tuple("AA:BB:CC:00:00:01", null),
+                        tuple("AA:BB:CC:00:00:03", "AA:BB:CC:99:99:99"));
+    }
+
+    @Test
+    void validateSeed_shouldRejectFirstInvalidDevice() {
+        // given
+        List<Device> duplicates = List.of(
+                createDevice(GATEWAY, "AA:BB:CC:00:00:01", null),
+                createDevice(SWITCH, "AA:BB:CC:00:00:01", null));
+        List<Device> accessPointUplink = List.of(
+                createDevice(SWITCH, "AA:BB:CC:00:00:02", "AA:BB:CC:00:00:01"),
+                createDevice(ACCESS_POINT, "AA:BB:CC:00:00:01", null));
+        List<Device> cycle = List.of(
+                createDevice(SWITCH, "AA:BB:CC:00:00:01", "AA:BB:CC:00:00:02"),
+                createDevice(SWITCH, "AA:BB:CC:00:00:02", "AA:BB:CC:00:00:01"));
+
+        // when & then
+        assertThat(assertThrows(DeviceInventoryException.class,
+                () -> DeviceBatchUtils.validateSeed(duplicates, false)).getMessage())
+                .isEqualTo("Seed device 2: A Device with MAC address AA:BB:CC:00:00:01 already exists.");
+        assertThat(assertThrows(DeviceInventoryException.class,
+                () -> DeviceBatchUtils.validateSeed(accessPointUplink, false)).getMessage())
+                .isEqualTo("Seed device 1: An Access Point is supposed to connect wireless Devices.");
+        assertThat(assertThrows(IllegalStateException.class,
+                () -> DeviceBatchUtils.validateSeed(cycle, false)).getMessage())
+                .startsWith("A cycle has been detected in the topology");
+        assertThat(assertThrows(DeviceInventoryException.class,
+                () -> DeviceBatchUtils.validateSeed(List.of(createDevice(SWITCH, "not a mac", null)), false))
+                .getMessage())
+                .startsWith("Seed device 1: ");
+    }
+}
@@ -0,0 +1,84 @@
+package com.michalkrol.deviceinventory.utils;
+
+import static com.michalkrol.deviceinventory.model.DeviceType.GATEWAY;
+import static com.michalkrol.deviceinventory.model.DeviceType.SWITCH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.model.TopologyEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+@SpringBootTest
+class DeviceChangeJournalTest {
+
+    private static final long GATEWAY_MAC = MacAddress.toLong("AA:BB:CC:00:00:00");
+
+    private void appendSwitches(DeviceChangeJournal journal, long firstSequence, int count) {
+        for (int i = 0; i < count; i++) {
+            journal.append(firstSequence + i, GATEWAY_MAC + firstSequence + i, SWITCH, GATEWAY_MAC);
+        }
+    }
+
+    @Test
+    void read_shouldReturnChangesAfterSequenceInPages() {
+        // given
+        DeviceChangeJournal journal = new DeviceChangeJournal(100);
+        journal.reset(10);
+        journal.append(11, GATEWAY_MAC, GATEWAY, MacAddress.NONE);
+        appendSwitches(journal, 12, 4);
+
+        // when
+        List<TopologyEvent> firstPage = journal.read(10, 3);
+        List<TopologyEvent> secondPage = journal.read(13, 3);
+
+        // then
+        assertThat(firstPage).extracting(TopologyEvent::getSequence, TopologyEvent::getDeviceType,
+                        TopologyEvent::getMacAddress, TopologyEvent::getUplinkMacAddress)
+                .containsExactly(
+                        tuple(11L, GATEWAY, "AA:BB:CC:00:00:00", null),
+                        tuple(12L, SWITCH, "AA:BB:CC:00:00:0C", "AA:BB:CC:00:00:00"),
+                        tuple(13L, SWITCH, "AA:BB:CC:00:00:0D", "AA:BB:CC:00:00:00"));
+        assertThat(secondPage).extracting(TopologyEvent::getSequence).containsExactly(14L, 15L);
+        assertThat(journal.read(15, 3)).isEmpty();
+        assertThat(journal.read(16, 3)).isNull();
+        assertThat(journal.read(9, 3)).isNull();
+    }
+
+    @Test
+    void append_shouldCompactOldestSegmentsBeyondRetention() {
+        // given
+        int segmentSize = DeviceChangeJournal.SEGMENT_SIZE;
+        DeviceChangeJournal journal = new DeviceChangeJournal(segmentSize);
+
+        // when
+        appendSwitches(journal, 1, 3 * segmentSize + 10);
+
+        // then
+        assertThat(journal.lastSequence()).isEqualTo(3L * segmentSize + 10);
+        assertThat(journal.read(2L * segmentSize - 1, 1)).isNull();
+        assertThat(journal.read(2L * segmentSize, 1)).extracting(TopologyEvent::getSequence)
+                .containsExactly(2L * segmentSize + 1);
+        assertThat(journal.read(2L * segmentSize + 5, 10)).extracting(TopologyEvent::getSequence)
+                .containsExactly(LongStream.rangeClosed(2L * segmentSize + 6, 2L * segmentSize + 15)
+                        .boxed().toArray(Long[]::new));
+    }
+
+    @Test
+    void append_shouldStartOverAfterGapInSequences() {
+        // given
+        DeviceChangeJournal journal = new DeviceChangeJournal(100);
+        appendSwitches(journal, 1, 5);
+
+        // when
+        appendSwitches(journal, 100, 2);
+
+        // then
+        assertThat(journal.read(3, 10)).isNull();
+        assertThat(journal.read(99, 10)).extracting(TopologyEvent::getSequence).containsExactly(100L, 101L);
+    }
+}
@@ -0,0 +1,311 @@
+package com.michalkrol.deviceinventory.utils;
+
+import static com.michalkrol.deviceinventory.model.DeviceType.ACCESS_POINT;
+import static com.michalkrol.deviceinventory.model.DeviceType.GATEWAY;
+import static com.michalkrol.deviceinventory.model.DeviceType.SWITCH;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+@SpringBootTest
+class DeviceTopologyIndexTest {
+
+    private static final long MAC_01 = MacAddress.toLong("AA:BB:CC:DD:EE:01");
+    private static final long MAC_02 = MacAddress.toLong("AA:BB:CC:DD:EE:02");
+    private static final long MAC_03 = MacAddress.toLong("AA:BB:CC:DD:EE:03");
+
+    private Device createDevice(DeviceType deviceType, String macAddress, String uplinkMacAddress) {
+        Device device = new Device();
+        device.setMacAddress(macAddress);
+        device.setUplinkMacAddress(uplinkMacAddress);
+        device.setDeviceType(deviceType);
+        return device;
+    }
+
+    @Test
+    void load_shouldIndexDevicesLinksAndUplinks() {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:01", null),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:01"),
+                createDevice(ACCESS_POINT, "AA:BB:CC:DD:EE:03", "AA:BB:CC:DD:EE:01")
+        ));
+
+        // then
+        assertThat(topologyIndex.size()).isEqualTo(3);
+        assertThat(topologyIndex.findDeviceType(MAC_03)).contains(ACCESS_POINT);
+        assertThat(topologyIndex.find(MAC_02)).map(Device::getUplinkMacAddress).contains("AA:BB:CC:DD:EE:01");
+        assertThat(topologyIndex.getUplinkMacAddress(MAC_02)).isEqualTo(MAC_01);
+        assertThat(topologyIndex.getUplinkMacAddress(MAC_01)).isEqualTo(MacAddress.NONE);
+        assertThat(topologyIndex.getLinkedMacAddresses(MAC_01)).containsExactly(MAC_02, MAC_03);
+        assertThat(topologyIndex.getRootMacAddresses()).containsExactly(MAC_01);
+    }
+
+    @Test
+    void load_shouldAcceptLinkedDevicesBeforeTheirUplink() {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:01"),
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:01", null)
+        ));
+
+        // then
+        assertThat(topologyIndex.size()).isEqualTo(2);
+        assertThat(topologyIndex.getLinkedMacAddresses(MAC_01)).containsExactly(MAC_02);
+        assertThat(topologyIndex.getRootMacAddresses()).containsExactly(MAC_01);
+    }
+
+    @Test
+    void add_shouldExtendExistingIndex() {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:01", null)
+        ));
+
+        // when
+        topologyIndex.add(createDevice(SWITCH, "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:01"));
+
+        // then
+        assertThat(topologyIndex.contains(MAC_02)).isTrue();
+        assertThat(topologyIndex.getLinkedMacAddresses(MAC_01)).containsExactly(MAC_02);
+    }
+
+    @Test
+    void getRootMacAddresses_shouldIncludeUnknownUplinks() {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:99")
+        ));
+        long unknownMacAddress = MacAddress.toLong("AA:BB:CC:DD:EE:99");
+
+        // then
+        assertThat(topologyIndex.contains(unknownMacAddress)).isFalse();
+        assertThat(topologyIndex.getRootMacAddresses()).containsExactly(unknownMacAddress);
+    }
+
+    @Test
+    void load_shouldReplacePreviousContent() {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:01", null)
+        ));
+
+        // when
+        topologyIndex.load(List.of(createDevice(GATEWAY, "AA:BB:CC:DD:EE:05", null)));
+
+        // then
+        assertThat(topologyIndex.contains(MAC_01)).isFalse();
+        assertThat(topologyIndex.getDevices()).extracting(Device::getMacAddress).containsExactly("AA:BB:CC:DD:EE:05");
+    }
+
+    @Test
+    void add_shouldCountDescendantsOfShallowAndDeepChains() {
+        // given
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        topologyIndex.add(0L, GATEWAY, MacAddress.NONE);
+        for (long macAddress = 1; macAddress < 200; macAddress++) {
+            topologyIndex.add(macAddress, SWITCH, macAddress - 1);
+        }
+
+        // when
+        topologyIndex.add(200L, ACCESS_POINT, 1L);
+
+        // then
+        assertThat(descendantCountOf(topologyIndex, 0L)).isEqualTo(200);
+        assertThat(descendantCountOf(topologyIndex, 1L)).isEqualTo(199);
+        assertThat(descendantCountOf(topologyIndex, 199L)).isZero();
+    }
+
+    @Test
+    void add_shouldMoveSubtreeAndRootWhenUplinkGetsRegistered() {
+        // given
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        topologyIndex.add(MAC_01, GATEWAY, MacAddress.NONE);
+        topologyIndex.add(MAC_03, SWITCH, MAC_02);
+        long mac04 = MacAddress.toLong("AA:BB:CC:DD:EE:04");
+        topologyIndex.add(mac04, ACCESS_POINT, MAC_03);
+
+        // when
+        topologyIndex.add(MAC_02, SWITCH, MAC_01);
+
+        // then
+        assertThat(descendantCountOf(topologyIndex, MAC_01)).isEqualTo(3);
+        assertThat(descendantCountOf(topologyIndex, MAC_02)).isEqualTo(2);
+        assertThat(topologyIndex.read(() -> topologyIndex.nextRootSlotAt(topologyIndex.firstRootSlot())))
+                .isEqualTo(DeviceTopologyIndex.NO_SLOT);
+        assertThat(topologyIndex.read(() -> topologyIndex.macAddressAt(topologyIndex.firstRootSlot())))
+                .isEqualTo(MAC_01);
+    }
+
+    @Test
+    void view_shouldKeepPlaceholderPromotedAfterwardsAsItWas() {
+        // given
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        topologyIndex.add(MAC_01, GATEWAY, MacAddress.NONE);
+        topologyIndex.add(MAC_03, SWITCH, MAC_02);
+        DeviceTopologyIndex.View view = topologyIndex.view();
+
+        // when
+        topologyIndex.add(MAC_02, SWITCH, MAC_01);
+
+        // then
+        int slot01 = topologyIndex.read(() -> topologyIndex.slotOfMacAddress(MAC_01));
+        int slot02 = topologyIndex.read(() -> topologyIndex.slotOfMacAddress(MAC_02));
+        assertThat(view.isDevice(slot02)).isFalse();
+        assertThat(view.isRoot(slot02)).isTrue();
+        assertThat(view.firstLinkedSlotAt(slot01)).isEqualTo(DeviceTopologyIndex.NO_SLOT);
+        DeviceTopologyIndex.View laterView = topologyIndex.view();
+        assertThat(laterView.isDevice(slot02)).isTrue();
+        assertThat(laterView.isRoot(slot02)).isFalse();
+        assertThat(laterView.firstLinkedSlotAt(slot01)).isEqualTo(slot02);
+        assertThat(laterView.version()).isGreaterThan(view.version());
+    }
+
+    @Test
+    void add_shouldKeepTypedCountsHeightsAndRankingEqualToRecomputedOnes() {
+        // given
+        SplittableRandom random = new SplittableRandom(11);
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        List<Device> devices = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            // every tenth device is linked to a switch registered later, moving that switch's subtree on registration;
+            // the switch itself is linked to an older device to keep the topology free of cycles
+            String macAddress = MacAddress.toString(i);
+            int uplink = switch (i % 10) {
+                case 0 -> i + 5;
+                case 5 -> random.nextInt(Math.max(i - 5, 1));
+                default -> random.nextInt(i);
+            };
+            String uplinkMacAddress = i == 0 ? null : MacAddress.toString(uplink);
+            devices.add(createDevice(i % 3 == 0 ? ACCESS_POINT : SWITCH, macAddress, uplinkMacAddress));
+        }
+
+        // when
+        devices.forEach(topologyIndex::add);
+        DeviceTopologyIndex loadedIndex = DeviceTopologyIndex.of(devices);
+
+        // then
+        for (Device device : devices) {
+            long macAddress = MacAddress.toLong(device.getMacAddress());
+            assertThat(aggregatesOf(topologyIndex, macAddress)).isEqualTo(aggregatesOf(loadedIndex, macAddress));
+        }
+        assertThat(largestSubtreesOf(topologyIndex)).isEqualTo(largestSubtreesOf(loadedIndex));
+    }
+
+    @Test
+    void add_shouldSettleDeepChainsWithoutRecomputingAggregates() {
+        // given
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        List<Device> devices = new ArrayList<>();
+        devices.add(createDevice(GATEWAY, MacAddress.toString(0), null));
+        for (int i = 1; i < 300; i++) {
+            devices.add(createDevice(SWITCH, MacAddress.toString(i), MacAddress.toString(i - 1)));
+        }
+        devices.forEach(topologyIndex::add);
+        // building the chain without reads in between falls back to one recompute
+        aggregatesOf(topologyIndex, 0L);
+
+        // when
+        List<Boolean> aggregatesKept = new ArrayList<>();
+        List<Integer> rootAggregates = new ArrayList<>();
+        for (int i = 300; i < 310; i++) {
+            Device device = createDevice(ACCESS_POINT, MacAddress.toString(i), MacAddress.toString(i - 10));
+            devices.add(device);
+            topologyIndex.add(device);
+            aggregatesKept.add(topologyIndex.hasAggregates());
+            rootAggregates.addAll(aggregatesOf(topologyIndex, 0L));
+            rootAggregates.addAll(aggregatesOf(topologyIndex, 0L));
+        }
+
+        // then
+        assertThat(aggregatesKept).containsOnly(true);
+        assertThat(rootAggregates.subList(0, 8)).containsExactly(300, 299, 1, 299, 300, 299, 1, 299);
+        assertThat(rootAggregates.subList(72, 80)).containsExactly(309, 299, 10, 300, 309, 299, 10, 300);
+        DeviceTopologyIndex loadedIndex = DeviceTopologyIndex.of(devices);
+        for (Device device : devices) {
+            long macAddress = MacAddress.toLong(device.getMacAddress());
+            assertThat(aggregatesOf(topologyIndex, macAddress)).isEqualTo(aggregatesOf(loadedIndex, macAddress));
+        }
+        assertThat(largestSubtreesOf(topologyIndex)).isEqualTo(largestSubtreesOf(loadedIndex));
+    }
+
+    @Test
+    void add_shouldKeepIntervalsOfWideAndDeepTopologiesWithoutFullRelabel() {
+        // given
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        List<Long> macAddresses = new ArrayList<>();
+        List<Boolean> intervalsKept = new ArrayList<>();
+
+        // when
+        for (long macAddress = 0; macAddress < 1_224; macAddress++) {
+            // 200 roots, 600 devices below the first root, 400 below one of them and a chain of 24
+            long uplinkMacAddress;
+            if (macAddress < 200) {
+                uplinkMacAddress = MacAddress.NONE;
+            } else if (macAddress < 800) {
+                uplinkMacAddress = 0L;
+            } else if (macAddress < 1_200) {
+                uplinkMacAddress = 205L;
+            } else {
+                uplinkMacAddress = macAddress == 1_200 ? 210L : macAddress - 1;
+            }
+            topologyIndex.add(macAddress, SWITCH, uplinkMacAddress);
+            macAddresses.add(macAddress);
+            intervalsKept.add(topologyIndex.read(topologyIndex::hasIntervals));
+        }
+
+        // then
+        assertThat(intervalsKept).containsOnly(true);
+        SplittableRandom random = new SplittableRandom(17);
+        for (int i = 0; i < 20_000; i++) {
+            int slot = topologyIndex.read(() ->
+                    topologyIndex.slotOfMacAddress(macAddresses.get(random.nextInt(1_224))));
+            int uplinkSlot = topologyIndex.read(() ->
+                    topologyIndex.slotOfMacAddress(macAddresses.get(random.nextInt(1_224))));
+            assertThat(topologyIndex.readIntervals(() -> topologyIndex.isDescendant(slot, uplinkSlot)))
+                    .isEqualTo(isDescendantByUplinks(topologyIndex, slot, uplinkSlot));
+        }
+        assertThat(topologyIndex.readIntervals(() -> topologyIndex.isDescendant(
+                topologyIndex.slotOfMacAddress(1_223L), topologyIndex.slotOfMacAddress(0L)))).isTrue();
+    }
+
+    private boolean isDescendantByUplinks(DeviceTopologyIndex topologyIndex, int slot, int uplinkSlot) {
+        return topologyIndex.read(() -> {
+            for (int ancestor = topologyIndex.uplinkSlotAt(slot); ancestor != DeviceTopologyIndex.NO_SLOT;
+                 ancestor = topologyIndex.uplinkSlotAt(ancestor)) {
+                if (ancestor == uplinkSlot) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    private List<Integer> aggregatesOf(DeviceTopologyIndex topologyIndex, long macAddress) {
+        return topologyIndex.readAggregates(() -> {
+            int slot = topologyIndex.slotOfMacAddress(macAddress);
+            return List.of(topologyIndex.descendantCountAt(slot), topologyIndex.descendantCountAt(slot, SWITCH),
+                    topologyIndex.descendantCountAt(slot, ACCESS_POINT), topologyIndex.heightAt(slot));
+        });
+    }
+
+    private List<Long> largestSubtreesOf(DeviceTopologyIndex topologyIndex) {
+        return topologyIndex.readAggregates(() -> Arrays.stream(topologyIndex.largestSubtreeSlots(50))
+                .mapToObj(topologyIndex::macAddressAt)
+                .toList());
+    }
+
+    private int descendantCountOf(DeviceTopologyIndex topologyIndex, long macAddress) {
+        return topologyIndex.readAggregates(() ->
+                topologyIndex.descendantCountAt(topologyIndex.slotOfMacAddress(macAddress)));
+    }
+}
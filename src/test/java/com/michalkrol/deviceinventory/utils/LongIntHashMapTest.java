@@ -0,0 +1,69 @@
+package com.michalkrol.deviceinventory.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class LongIntHashMapTest {
+
+    @Test
+    void shouldReturnMissingValueForAbsentKey() {
+        LongIntHashMap map = new LongIntHashMap(-1);
+
+        assertEquals(-1, map.get(42L));
+        assertFalse(map.containsKey(42L));
+    }
+
+    @Test
+    void shouldStoreAndReplaceValues() {
+        LongIntHashMap map = new LongIntHashMap(-1);
+
+        assertEquals(-1, map.put(0xAABBCCDDEE01L, 1));
+        assertEquals(1, map.put(0xAABBCCDDEE01L, 2));
+
+        assertEquals(2, map.get(0xAABBCCDDEE01L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void shouldSupportZeroKey() {
+        LongIntHashMap map = new LongIntHashMap(-1);
+
+        map.put(0L, 7);
+
+        assertTrue(map.containsKey(0L));
+        assertEquals(7, map.get(0L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void shouldKeepAllEntriesWhenGrowing() {
+        LongIntHashMap map = new LongIntHashMap(-1);
+
+        for (int i = 0; i < 100_000; i++) {
+            map.put(0xAABBCC000000L + i, i);
+        }
+
+        assertEquals(100_000, map.size());
+        for (int i = 0; i < 100_000; i++) {
+            assertEquals(i, map.get(0xAABBCC000000L + i));
+        }
+    }
+
+    @Test
+    void shouldForgetEntriesAfterClear() {
+        LongIntHashMap map = new LongIntHashMap(-1);
+        map.put(0L, 1);
+        map.put(5L, 2);
+
+        map.clear();
+
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(0L));
+        assertFalse(map.containsKey(5L));
+    }
+}
@@ -0,0 +1,115 @@
+package com.michalkrol.deviceinventory.utils;
+
+import static com.michalkrol.deviceinventory.model.DeviceType.ACCESS_POINT;
+import static com.michalkrol.deviceinventory.model.DeviceType.GATEWAY;
+import static com.michalkrol.deviceinventory.model.DeviceType.SWITCH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceNode;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+@SpringBootTest
+class PackedTopologyTest {
+
+    private Device createDevice(DeviceType deviceType, String macAddress, String uplinkMacAddress) {
+        Device device = new Device();
+        device.setMacAddress(macAddress);
+        device.setUplinkMacAddress(uplinkMacAddress);
+        device.setDeviceType(deviceType);
+        return device;
+    }
+
+    // 200 access points give the switch a child count that takes two varint bytes
+    private DeviceTopologyIndex createTopology() {
+        List<Device> devices = new ArrayList<>(List.of(
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:01", null),
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:02", null),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:03", "AA:BB:CC:DD:EE:01"),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:04", "AA:BB:CC:DD:EE:01")));
+        for (int i = 0; i < 200; i++) {
+            devices.add(createDevice(ACCESS_POINT, String.format("AA:BB:CC:DD:10:%02X", i), "AA:BB:CC:DD:EE:03"));
+        }
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        topologyIndex.load(devices);
+        return topologyIndex;
+    }
+
+    @Test
+    void writeDeviceTopology_shouldReadBackAsSameTreeInFractionOfJsonSize() throws IOException {
+        // given
+        DeviceTopologyIndex topologyIndex = createTopology();
+        ObjectMapper objectMapper = new ObjectMapper();
+        String json = objectMapper.writeValueAsString(TopologyUtils.prepareDeviceTopology(topologyIndex));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // when
+        PackedTopology.writeDeviceTopology(outputStream, topologyIndex.view());
+        List<DeviceNode> roots = PackedTopology.read(new ByteArrayInputStream(outputStream.toByteArray()));
+
+        // then
+        assertEquals(json, objectMapper.writeValueAsString(roots));
+        // 1 byte root count, 7 bytes per node and one more for the count of 200
+        assertEquals(1 + 204 * 7 + 1, outputStream.size());
+        assertTrue(outputStream.size() * 7 < json.length());
+    }
+
+    @Test
+    void writeSubDeviceTopology_shouldWriteOneRootOrNone() throws IOException {
+        // given
+        DeviceTopologyIndex topologyIndex = createTopology();
+        ByteArrayOutputStream existing = new ByteArrayOutputStream();
+        ByteArrayOutputStream missing = new ByteArrayOutputStream();
+
+        // when
+        PackedTopology.writeSubDeviceTopology(existing, MacAddress.parse("AA:BB:CC:DD:EE:03"), topologyIndex);
+        PackedTopology.writeSubDeviceTopology(missing, MacAddress.parse("AA:BB:CC:DD:FF:FF"), topologyIndex);
+
+        // then
+        List<DeviceNode> roots = PackedTopology.read(new ByteArrayInputStream(existing.toByteArray()));
+        assertThat(roots).singleElement()
+                .satisfies(root -> assertEquals("AA:BB:CC:DD:EE:03", root.getMacAddress()))
+                .satisfies(root -> assertThat(root.getLinkedDevices()).hasSize(200));
+        assertThat(PackedTopology.read(new ByteArrayInputStream(missing.toByteArray()))).isEmpty();
+    }
+
+    @Test
+    void read_shouldHandleDeepChainsAndRejectTruncatedInput() throws IOException {
+        // given
+        List<Device> devices = new ArrayList<>();
+        devices.add(createDevice(GATEWAY, MacAddress.toString(1), null));
+        for (int i = 2; i <= 50_000; i++) {
+            devices.add(createDevice(SWITCH, MacAddress.toString(i), MacAddress.toString(i - 1)));
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PackedTopology.writeDeviceTopology(outputStream, DeviceTopologyIndex.of(devices).view());
+        byte[] bytes = outputStream.toByteArray();
+
+        // when
+        DeviceNode node = PackedTopology.read(new ByteArrayInputStream(bytes)).getFirst();
+        int depth = 0;
+        while (!node.getLinkedDevices().isEmpty()) {
+            node = node.getLinkedDevices().getFirst();
+            depth++;
+        }
+
+        // then
+        assertEquals(49_999, depth);
+        assertEquals(MacAddress.toString(50_000), node.getMacAddress());
+        assertThrows(IOException.class,
+                () -> PackedTopology.read(new ByteArrayInputStream(bytes, 0, bytes.length - 1)));
+    }
+}
@@ -0,0 +1,83 @@
+package com.michalkrol.deviceinventory.utils;
+
+import static com.michalkrol.deviceinventory.model.DeviceType.ACCESS_POINT;
+import static com.michalkrol.deviceinventory.model.DeviceType.GATEWAY;
+import static com.michalkrol.deviceinventory.model.DeviceType.SWITCH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceEntry;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@SpringBootTest
+class SortedDeviceIndexTest {
+
+    private Device createDevice(DeviceType deviceType, String macAddress, String uplinkMacAddress) {
+        Device device = new Device();
+        device.setMacAddress(macAddress);
+        device.setUplinkMacAddress(uplinkMacAddress);
+        device.setDeviceType(deviceType);
+        return device;
+    }
+
+    private List<Device> createDevices() {
+        return List.of(
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:04", "AA:BB:CC:DD:EE:02"),
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:02", null),
+                createDevice(ACCESS_POINT, "AA:BB:CC:DD:EE:01", "AA:BB:CC:DD:EE:04"),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:03", "AA:BB:CC:DD:EE:02"),
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:00", null));
+    }
+
+    private List<String> macAddressesOf(List<DeviceEntry> entries) {
+        return entries.stream().map(DeviceEntry::getMacAddress).toList();
+    }
+
+    @Test
+    void list_shouldFollowLoadsAndAddsInSortingOrder() {
+        // given
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        SortedDeviceIndex sortedDeviceIndex = new SortedDeviceIndex(topologyIndex);
+        List<Device> devices = createDevices();
+        topologyIndex.load(devices.subList(0, 3));
+
+        // when
+        topologyIndex.add(devices.get(3));
+        topologyIndex.add(devices.get(4));
+
+        // then
+        List<Device> expected = new ArrayList<>(devices);
+        DeviceSortingUtils.sortDevices(expected);
+        assertEquals(5, sortedDeviceIndex.size());
+        assertEquals(expected.stream().map(Device::getMacAddress).toList(),
+                macAddressesOf(sortedDeviceIndex.list(0, Integer.MAX_VALUE)));
+        assertThat(sortedDeviceIndex.list(0, Integer.MAX_VALUE)).extracting(DeviceEntry::getDeviceType)
+                .containsExactly(GATEWAY, GATEWAY, SWITCH, SWITCH, ACCESS_POINT);
+    }
+
+    @Test
+    void positionAfter_shouldContinueAfterRegisteredAndUnknownDevices() {
+        // given
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        SortedDeviceIndex sortedDeviceIndex = new SortedDeviceIndex(topologyIndex);
+        topologyIndex.load(createDevices());
+
+        // when
+        int afterRegistered = sortedDeviceIndex.positionAfter(SWITCH, MacAddress.toLong("AA:BB:CC:DD:EE:03"));
+        int afterUnknown = sortedDeviceIndex.positionAfter(GATEWAY, MacAddress.toLong("AA:BB:CC:DD:EE:01"));
+
+        // then
+        assertEquals(3, afterRegistered);
+        assertEquals(List.of("AA:BB:CC:DD:EE:04", "AA:BB:CC:DD:EE:01"),
+                macAddressesOf(sortedDeviceIndex.list(afterRegistered, 10)));
+        assertEquals(1, afterUnknown);
+        assertEquals(List.of("AA:BB:CC:DD:EE:02"), macAddressesOf(sortedDeviceIndex.list(afterUnknown, 1)));
+    }
+}
@@ -0,0 +1,80 @@
+package com.michalkrol.deviceinventory.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+@SpringBootTest
+class SortedMacAddressSetTest {
+
+    @Test
+    void shouldIgnoreDuplicates() {
+        SortedMacAddressSet set = new SortedMacAddressSet();
+
+        assertTrue(set.add(0xAABBCCDDEE01L));
+        assertFalse(set.add(0xAABBCCDDEE01L));
+
+        assertEquals(1, set.size());
+        assertEquals(0xAABBCCDDEE01L, set.get(0));
+    }
+
+    // enough random inserts to split chunks in the middle of loaded data as well as at both ends
+    @Test
+    void shouldMatchTreeSetAfterLoadAndRandomInserts() {
+        // given
+        SplittableRandom random = new SplittableRandom(42);
+        TreeSet<Long> expected = new TreeSet<>();
+        long[] loaded = new long[5_000];
+        for (int i = 0; i < loaded.length; i++) {
+            loaded[i] = 0x100000L + i * 4L;
+            expected.add(loaded[i]);
+        }
+        SortedMacAddressSet set = new SortedMacAddressSet();
+        set.load(loaded, loaded.length);
+
+        // when
+        for (int i = 0; i < 20_000; i++) {
+            long macAddress = random.nextLong(0x140000L);
+            assertEquals(expected.add(macAddress), set.add(macAddress));
+        }
+
+        // then
+        assertEquals(expected.size(), set.size());
+        long[] actual = new long[set.size()];
+        assertEquals(set.size(), set.copy(0, actual, 0, Integer.MAX_VALUE));
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), actual);
+        for (int i = 0; i < 1_000; i++) {
+            long macAddress = random.nextLong(0x150000L);
+            int rank = expected.headSet(macAddress).size();
+            assertEquals(rank, set.rank(macAddress));
+            if (rank < set.size()) {
+                assertEquals(expected.ceiling(macAddress), set.get(rank));
+            }
+        }
+    }
+
+    @Test
+    void shouldCopyAcrossChunksFromAnyPosition() {
+        // given
+        SortedMacAddressSet set = new SortedMacAddressSet();
+        for (long macAddress = 2_000; macAddress > 0; macAddress--) {
+            set.add(macAddress);
+        }
+        long[] target = new long[700];
+
+        // when
+        int copied = set.copy(1_500, target, 100, 600);
+
+        // then
+        assertEquals(500, copied);
+        assertEquals(1_501, target[100]);
+        assertEquals(2_000, target[599]);
+    }
+}
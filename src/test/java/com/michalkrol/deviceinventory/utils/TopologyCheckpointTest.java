@@ -0,0 +1,121 @@
+package com.michalkrol.deviceinventory.utils;
+
+import static com.michalkrol.deviceinventory.model.DeviceType.ACCESS_POINT;
+import static com.michalkrol.deviceinventory.model.DeviceType.GATEWAY;
+import static com.michalkrol.deviceinventory.model.DeviceType.SWITCH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.utils.TopologyCheckpoint.Fingerprint;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@SpringBootTest
+class TopologyCheckpointTest {
+
+    private static final Fingerprint FINGERPRINT = new Fingerprint(6, 42);
+
+    @TempDir
+    private Path directory;
+
+    private Device createDevice(DeviceType deviceType, String macAddress, String uplinkMacAddress) {
+        Device device = new Device();
+        device.setMacAddress(macAddress);
+        device.setUplinkMacAddress(uplinkMacAddress);
+        device.setDeviceType(deviceType);
+        return device;
+    }
+
+    // a placeholder uplink registered after its linked devices, and one that never gets registered
+    private DeviceTopologyIndex createTopology() {
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        topologyIndex.add(createDevice(GATEWAY, "AA:BB:CC:DD:EE:01", null));
+        topologyIndex.add(createDevice(SWITCH, "AA:BB:CC:DD:EE:03", "AA:BB:CC:DD:EE:02"));
+        topologyIndex.add(createDevice(SWITCH, "AA:BB:CC:DD:EE:04", "AA:BB:CC:DD:EE:01"));
+        topologyIndex.add(createDevice(SWITCH, "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:01"));
+        topologyIndex.add(createDevice(ACCESS_POINT, "AA:BB:CC:DD:EE:05", "AA:BB:CC:DD:EE:03"));
+        topologyIndex.add(createDevice(null, "AA:BB:CC:DD:EE:06", "AA:BB:CC:DD:FF:00"));
+        return topologyIndex;
+    }
+
+    @Test
+    void restore_shouldRebuildSameTopologyAsCheckpointedIndex() throws IOException {
+        // given
+        DeviceTopologyIndex topologyIndex = createTopology();
+        Path path = directory.resolve("topology.checkpoint");
+        TopologyCheckpoint.write(path, topologyIndex.view(), FINGERPRINT);
+        DeviceTopologyIndex restoredIndex = new DeviceTopologyIndex();
+
+        // when
+        boolean restored = TopologyCheckpoint.restore(path, FINGERPRINT, restoredIndex);
+
+        // then
+        assertTrue(restored);
+        assertTrue(restoredIndex.isLoaded());
+        assertEquals(topologyIndex.size(), restoredIndex.size());
+        assertThat(restoredIndex.getDevices()).containsExactlyInAnyOrderElementsOf(topologyIndex.getDevices());
+        ObjectMapper objectMapper = new ObjectMapper();
+        assertEquals(objectMapper.writeValueAsString(TopologyUtils.prepareDeviceTopology(topologyIndex)),
+                objectMapper.writeValueAsString(TopologyUtils.prepareDeviceTopology(restoredIndex)));
+        assertEquals(4, TopologyUtils.prepareSubtreeAggregates(MacAddress.parse("AA:BB:CC:DD:EE:01"), restoredIndex)
+                .getDescendantCount());
+    }
+
+    @Test
+    void restore_shouldSkipStaleOrMissingCheckpoint() throws IOException {
+        // given
+        Path path = directory.resolve("topology.checkpoint");
+        DeviceTopologyIndex restoredIndex = new DeviceTopologyIndex();
+
+        // when & then
+        assertFalse(TopologyCheckpoint.restore(path, FINGERPRINT, restoredIndex));
+        TopologyCheckpoint.write(path, createTopology().view(), FINGERPRINT);
+        assertFalse(TopologyCheckpoint.restore(path, new Fingerprint(7, 43), restoredIndex));
+        assertFalse(restoredIndex.isLoaded());
+    }
+
+    @Test
+    void restore_shouldRejectCorruptedCheckpoint() throws IOException {
+        // given
+        Path path = directory.resolve("topology.checkpoint");
+        TopologyCheckpoint.write(path, createTopology().view(), FINGERPRINT);
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length - 3] ^= 1;
+        Files.write(path, bytes);
+
+        // when & then
+        IOException exception = assertThrows(IOException.class,
+                () -> TopologyCheckpoint.restore(path, FINGERPRINT, new DeviceTopologyIndex()));
+        assertThat(exception.getMessage()).startsWith("Checksum mismatch");
+    }
+
+    @Test
+    void restore_shouldKeepAcceptingDevicesAfterwards() throws IOException {
+        // given
+        Path path = directory.resolve("topology.checkpoint");
+        TopologyCheckpoint.write(path, createTopology().view(), FINGERPRINT);
+        DeviceTopologyIndex restoredIndex = new DeviceTopologyIndex();
+        TopologyCheckpoint.restore(path, FINGERPRINT, restoredIndex);
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            restoredIndex.add(createDevice(ACCESS_POINT, String.format("AA:BB:CC:DD:10:%02X", i), "AA:BB:CC:DD:EE:04"));
+        }
+
+        // then
+        assertEquals(106, restoredIndex.size());
+        assertThat(restoredIndex.getLinkedMacAddresses(MacAddress.toLong("AA:BB:CC:DD:EE:04"))).hasSize(100);
+    }
+}
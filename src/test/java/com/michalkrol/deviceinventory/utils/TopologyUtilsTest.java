@@ -5,17 +5,32 @@ import static com.michalkrol.deviceinventory.model.DeviceType.SWITCH;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteConstraints;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.michalkrol.deviceinventory.exception.DeviceInventoryException;
+import com.michalkrol.deviceinventory.model.CommonUplink;
 import com.michalkrol.deviceinventory.model.Device;
+import com.michalkrol.deviceinventory.model.DeviceEntry;
 import com.michalkrol.deviceinventory.model.DeviceNode;
 import com.michalkrol.deviceinventory.model.DeviceType;
+import com.michalkrol.deviceinventory.model.ImpactReport;
+import com.michalkrol.deviceinventory.model.MacAddress;
+import com.michalkrol.deviceinventory.model.SubtreeAggregates;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 
 @SpringBootTest
 class TopologyUtilsTest {
@@ -65,6 +80,24 @@ class TopologyUtilsTest {
         assertThat(node03.getLinkedDevices()).isEmpty();
     }
 
+    @Test
+    void prepareSubDeviceTopology_shouldAssembleSubtreeRowsOnly() {
+        // given
+        Device device3 = createDevice(SWITCH, "AA:BB:CC:DD:EE:03", "AA:BB:CC:DD:EE:02");  // uplink not in the rows
+        Device device4 = createDevice(SWITCH, "AA:BB:CC:DD:EE:04", "AA:BB:CC:DD:EE:03");
+        Device device5 = createDevice(SWITCH, "AA:BB:CC:DD:EE:05", "AA:BB:CC:DD:EE:04");
+
+        // when
+        DeviceNode root = TopologyUtils.prepareSubDeviceTopology("AA:BB:CC:DD:EE:03",
+                List.of(device3, device4, device5));
+
+        // then
+        assertThat(root.getMacAddress()).isEqualTo("AA:BB:CC:DD:EE:03");
+        assertThat(root.getLinkedDevices()).extracting(DeviceNode::getMacAddress).containsExactly("AA:BB:CC:DD:EE:04");
+        assertThat(root.getLinkedDevices().getFirst().getLinkedDevices())
+                .extracting(DeviceNode::getMacAddress).containsExactly("AA:BB:CC:DD:EE:05");
+    }
+
     @Test
     void prepareSubDeviceTopology_shouldReturnRootEvenIfItHasNoChildren() {
         // given
@@ -278,6 +311,27 @@ class TopologyUtilsTest {
         assertDoesNotThrow(() -> TopologyUtils.validateNoCycles(devices));
     }
 
+    @Test
+    void findCycles_shouldReturnDevicesOnAndBelowCycles() {
+        List<Device> devices = List.of(
+                createDevice("AA:BB:CC:00:00:01", null),
+                createDevice("AA:BB:CC:00:00:02", "AA:BB:CC:00:00:01"),
+                createDevice("AA:BB:CC:00:00:03", "AA:BB:CC:00:00:04"),
+                createDevice("AA:BB:CC:00:00:04", "AA:BB:CC:00:00:03"),
+                createDevice("AA:BB:CC:00:00:05", "AA:BB:CC:00:00:04"),
+                createDevice("AA:BB:CC:00:00:06", "AA:BB:CC:00:00:05"),
+                createDevice("AA:BB:CC:00:00:07", "AA:BB:CC:00:00:07")
+        );
+
+        TopologyUtils.TopologyCycles topologyCycles = TopologyUtils.findCycles(DeviceTopologyIndex.of(devices));
+
+        assertThat(topologyCycles.cycles()).hasSize(2);
+        assertThat(topologyCycles.macAddresses()).containsExactlyInAnyOrder(
+                MacAddress.toLong("AA:BB:CC:00:00:03"), MacAddress.toLong("AA:BB:CC:00:00:04"),
+                MacAddress.toLong("AA:BB:CC:00:00:05"), MacAddress.toLong("AA:BB:CC:00:00:06"),
+                MacAddress.toLong("AA:BB:CC:00:00:07"));
+    }
+
     @Test
     void validateNoCycles_shouldThrowOnSelfLoop() {
         List<Device> devices = List.of(
@@ -339,4 +393,565 @@ class TopologyUtilsTest {
         // when & then
         assertDoesNotThrow(() -> TopologyUtils.checkUplinkConnection(device, devices));
     }
+
+    @Test
+    void validateNoCycles_shouldHandleChainOfMillionDevices() {
+        // given
+        DeviceTopologyIndex topologyIndex = createChain(1_000_000);
+
+        // when & then
+        assertDoesNotThrow(() -> TopologyUtils.validateNoCycles(topologyIndex));
+    }
+
+    @Test
+    void validateNoCycles_shouldDetectCycleClosingChainOfMillionDevices() {
+        // given
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        topologyIndex.add(0L, SWITCH, 999_999L);
+        for (long macAddress = 1; macAddress < 1_000_000; macAddress++) {
+            topologyIndex.add(macAddress, SWITCH, macAddress - 1);
+        }
+
+        // when & then
+        IllegalStateException ex = assertThrows(
+                IllegalStateException.class,
+                () -> TopologyUtils.validateNoCycles(topologyIndex)
+        );
+        assertTrue(ex.getMessage().contains("00:00:00:00:00:00"));
+        assertTrue(ex.getMessage().contains("00:00:00:0F:42:3F"));
+    }
+
+    @Test
+    void prepareSubDeviceTopology_shouldHandleChainOfMillionDevices() {
+        // given
+        DeviceTopologyIndex topologyIndex = createChain(1_000_000);
+
+        // when
+        DeviceNode root = TopologyUtils.prepareSubDeviceTopology(new MacAddress(1L), topologyIndex);
+
+        // then
+        int depth = 0;
+        DeviceNode node = root;
+        while (!node.getLinkedDevices().isEmpty()) {
+            node = node.getLinkedDevices().getFirst();
+            depth++;
+        }
+        assertEquals(999_998, depth);
+        assertEquals("00:00:00:0F:42:3F", node.getMacAddress());
+    }
+
+    @Test
+    void checkNoCycle_shouldWalkChainOfMillionDevices() {
+        // given
+        DeviceTopologyIndex topologyIndex = createChain(1_000_000);
+
+        // when & then
+        assertDoesNotThrow(() ->
+                TopologyUtils.checkNoCycle(new MacAddress(1_000_000L), new MacAddress(999_999L), topologyIndex));
+    }
+
+    @Test
+    void checkNoCycle_shouldThrowWhenUplinkIsDescendant() {
+        // given
+        Device orphan = createDevice(SWITCH, "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:01");
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(orphan));
+
+        // when & then
+        DeviceInventoryException ex = assertThrows(DeviceInventoryException.class, () ->
+                TopologyUtils.checkNoCycle(
+                        MacAddress.parse("AA:BB:CC:DD:EE:01"), MacAddress.parse("AA:BB:CC:DD:EE:02"), topologyIndex)
+        );
+
+        assertEquals("Linking AA:BB:CC:DD:EE:01 to AA:BB:CC:DD:EE:02 would create a cycle in the topology.",
+                ex.getMessage());
+    }
+
+    @Test
+    void checkNoCycle_shouldNotThrowForNewMacAddress() {
+        // given
+        Device root = createDevice(GATEWAY, "AA:BB:CC:DD:EE:01", null);
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(root));
+
+        // when & then
+        assertDoesNotThrow(() -> TopologyUtils.checkNoCycle(
+                MacAddress.parse("AA:BB:CC:DD:EE:02"), MacAddress.parse("AA:BB:CC:DD:EE:01"), topologyIndex));
+    }
+
+    @Test
+    void writeDeviceTopology_shouldMatchSerializedDeviceNodes() throws IOException {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:01", null),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:01"),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:03", "AA:BB:CC:DD:EE:01"),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:04", "AA:BB:CC:DD:EE:02"),
+                createDevice(SWITCH, "AA:BB:CC:DD:FF:02", "AA:BB:CC:DD:FF:01"),
+                createDevice(GATEWAY, "AA:BB:CC:DD:FF:03", null)));
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        // when
+        String streamed = write(objectMapper, generator -> TopologyUtils.writeDeviceTopology(generator, topologyIndex));
+
+        // then
+        assertEquals(objectMapper.writeValueAsString(TopologyUtils.prepareDeviceTopology(topologyIndex)), streamed);
+    }
+
+    @Test
+    void writeSubDeviceTopology_shouldMatchSerializedDeviceNode() throws IOException {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:01", null),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:01"),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:03", "AA:BB:CC:DD:EE:02"),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:04", "AA:BB:CC:DD:EE:02")));
+        MacAddress root = MacAddress.parse("AA:BB:CC:DD:EE:02");
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        // when
+        String streamed = write(objectMapper,
+                generator -> TopologyUtils.writeSubDeviceTopology(generator, root, topologyIndex));
+
+        // then
+        assertEquals(objectMapper.writeValueAsString(TopologyUtils.prepareSubDeviceTopology(root, topologyIndex)),
+                streamed);
+    }
+
+    @Test
+    void writeSubDeviceTopology_shouldHandleChainOfMillionDevices() throws IOException {
+        // given
+        DeviceTopologyIndex topologyIndex = createChain(1_000_000);
+        JsonFactory jsonFactory = JsonFactory.builder()
+                .streamWriteConstraints(StreamWriteConstraints.builder().maxNestingDepth(Integer.MAX_VALUE).build())
+                .build();
+        CountingOutputStream outputStream = new CountingOutputStream();
+
+        // when
+        try (JsonGenerator generator = jsonFactory.createGenerator(outputStream)) {
+            TopologyUtils.writeSubDeviceTopology(generator, new MacAddress(0L), topologyIndex);
+        }
+
+        // then
+        long nodeLength = "{\"macAddress\":\"00:00:00:00:00:00\",\"linkedDevices\":[]}".length();
+        assertEquals(1_000_000 * nodeLength, outputStream.count);
+    }
+
+    @Test
+    void prepareSubDeviceTopology_withLimits_shouldCutDepthAndPageLinkedDevices() {
+        // given
+        DeviceTopologyIndex topologyIndex = createGatewayWithThreeSwitches();
+
+        // when
+        DeviceNode root = TopologyUtils.prepareSubDeviceTopology(MacAddress.parse("AA:BB:CC:DD:EE:01"), topologyIndex,
+                new TopologyUtils.TopologyLimits(1, 2, null));
+
+        // then
+        assertThat(root.getDescendantCount()).isEqualTo(4);
+        assertThat(root.getHasMore()).isTrue();
+        assertThat(root.getLinkedDevices()).extracting(DeviceNode::getMacAddress)
+                .containsExactly("AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:03");
+        DeviceNode node02 = root.getLinkedDevices().getFirst();
+        assertThat(node02.getDescendantCount()).isEqualTo(1);
+        assertThat(node02.getHasMore()).isTrue();
+        assertThat(node02.getLinkedDevices()).isEmpty();
+        assertThat(root.getLinkedDevices().get(1).getHasMore()).isFalse();
+    }
+
+    @Test
+    void prepareSubDeviceTopology_withCursor_shouldContinueAfterLinkedDevice() {
+        // given
+        DeviceTopologyIndex topologyIndex = createGatewayWithThreeSwitches();
+
+        // when
+        DeviceNode root = TopologyUtils.prepareSubDeviceTopology(MacAddress.parse("AA:BB:CC:DD:EE:01"), topologyIndex,
+                new TopologyUtils.TopologyLimits(1, 2, MacAddress.parse("AA:BB:CC:DD:EE:03")));
+
+        // then
+        assertThat(root.getLinkedDevices()).extracting(DeviceNode::getMacAddress)
+                .containsExactly("AA:BB:CC:DD:EE:04");
+        assertThat(root.getHasMore()).isFalse();
+    }
+
+    @Test
+    void prepareSubDeviceTopology_withCursor_shouldRejectDeviceLinkedElsewhere() {
+        // given
+        DeviceTopologyIndex topologyIndex = createGatewayWithThreeSwitches();
+
+        // when & then
+        DeviceInventoryException ex = assertThrows(DeviceInventoryException.class, () ->
+                TopologyUtils.prepareSubDeviceTopology(MacAddress.parse("AA:BB:CC:DD:EE:01"), topologyIndex,
+                        new TopologyUtils.TopologyLimits(1, 2, MacAddress.parse("AA:BB:CC:DD:EE:05"))));
+
+        assertEquals("Invalid page cursor AA:BB:CC:DD:EE:05.", ex.getMessage());
+    }
+
+    @Test
+    void prepareDeviceTopology_withLimits_shouldPageRoots() {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:01", null),
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:02", null),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:03", "AA:BB:CC:DD:EE:02"),
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:04", null)));
+
+        // when
+        List<DeviceNode> firstPage = TopologyUtils.prepareDeviceTopology(topologyIndex,
+                new TopologyUtils.TopologyLimits(0, 2, null));
+        List<DeviceNode> secondPage = TopologyUtils.prepareDeviceTopology(topologyIndex,
+                new TopologyUtils.TopologyLimits(0, 2, MacAddress.parse("AA:BB:CC:DD:EE:02")));
+
+        // then
+        assertThat(firstPage).extracting(DeviceNode::getMacAddress)
+                .containsExactly("AA:BB:CC:DD:EE:01", "AA:BB:CC:DD:EE:02");
+        assertThat(firstPage.get(1).getHasMore()).isTrue();
+        assertThat(firstPage.get(1).getDescendantCount()).isEqualTo(1);
+        assertThat(secondPage).extracting(DeviceNode::getMacAddress).containsExactly("AA:BB:CC:DD:EE:04");
+    }
+
+    @Test
+    void prepareUplinkPath_shouldReturnDeviceUpToRoot() {
+        // given
+        DeviceTopologyIndex topologyIndex = createGatewayWithThreeSwitches();
+
+        // when
+        List<DeviceEntry> uplinkPath = TopologyUtils.prepareUplinkPath(MacAddress.parse("AA:BB:CC:DD:EE:05"),
+                topologyIndex);
+
+        // then
+        assertThat(uplinkPath).extracting(DeviceEntry::getMacAddress)
+                .containsExactly("AA:BB:CC:DD:EE:05", "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:01");
+        assertThat(uplinkPath).extracting(DeviceEntry::getDeviceType).containsExactly(SWITCH, SWITCH, GATEWAY);
+    }
+
+    @Test
+    void findCommonUplink_shouldReturnLowestSharedUplinkAndDistances() {
+        // given
+        DeviceTopologyIndex topologyIndex = createGatewayWithThreeSwitches();
+
+        // when
+        CommonUplink commonUplink = TopologyUtils.findCommonUplink(MacAddress.parse("AA:BB:CC:DD:EE:05"),
+                MacAddress.parse("AA:BB:CC:DD:EE:03"), topologyIndex);
+        CommonUplink ownUplink = TopologyUtils.findCommonUplink(MacAddress.parse("AA:BB:CC:DD:EE:05"),
+                MacAddress.parse("AA:BB:CC:DD:EE:02"), topologyIndex);
+
+        // then
+        assertThat(commonUplink.getMacAddress()).isEqualTo("AA:BB:CC:DD:EE:01");
+        assertThat(commonUplink.getDeviceType()).isEqualTo(GATEWAY);
+        assertThat(commonUplink.getFirstDistance()).isEqualTo(2);
+        assertThat(commonUplink.getSecondDistance()).isEqualTo(1);
+        assertThat(ownUplink.getMacAddress()).isEqualTo("AA:BB:CC:DD:EE:02");
+        assertThat(ownUplink.getFirstDistance()).isEqualTo(1);
+        assertThat(ownUplink.getSecondDistance()).isZero();
+    }
+
+    @Test
+    void findCommonUplink_shouldReturnNullForSeparateTrees() {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:01", null),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:01"),
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:03", null)));
+
+        // when & then
+        assertThat(TopologyUtils.findCommonUplink(MacAddress.parse("AA:BB:CC:DD:EE:02"),
+                MacAddress.parse("AA:BB:CC:DD:EE:03"), topologyIndex)).isNull();
+        assertThat(TopologyUtils.findCommonUplink(MacAddress.parse("AA:BB:CC:DD:EE:02"),
+                MacAddress.parse("AA:BB:CC:DD:EE:99"), topologyIndex)).isNull();
+    }
+
+    @Test
+    void findCommonUplink_shouldMatchUplinkWalkOnRandomForest() {
+        // given
+        SplittableRandom random = new SplittableRandom(42);
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        for (long macAddress = 0; macAddress < 5_000; macAddress++) {
+            // every 50th device starts a new tree, later ones mostly extend recent devices into deep chains
+            long uplinkMacAddress = macAddress % 50 == 0 ? MacAddress.NONE
+                    : macAddress - 1 - random.nextLong(Math.min(macAddress, 3));
+            topologyIndex.add(macAddress, macAddress % 50 == 0 ? GATEWAY : SWITCH, uplinkMacAddress);
+        }
+
+        for (int i = 0; i < 1_000; i++) {
+            long first = random.nextLong(5_000);
+            long second = random.nextLong(5_000);
+
+            // when
+            CommonUplink commonUplink = TopologyUtils.findCommonUplink(new MacAddress(first), new MacAddress(second),
+                    topologyIndex);
+
+            // then
+            List<Long> firstPath = uplinkPathOf(topologyIndex, first);
+            List<Long> secondPath = uplinkPathOf(topologyIndex, second);
+            if (!firstPath.getLast().equals(secondPath.getLast())) {
+                assertThat(commonUplink).isNull();
+                continue;
+            }
+            long expected = firstPath.stream().filter(secondPath::contains).findFirst().orElseThrow();
+            assertThat(commonUplink.getMacAddress()).isEqualTo(MacAddress.toString(expected));
+            assertThat(commonUplink.getFirstDistance()).isEqualTo(firstPath.indexOf(expected));
+            assertThat(commonUplink.getSecondDistance()).isEqualTo(secondPath.indexOf(expected));
+        }
+    }
+
+    @Test
+    void findCommonUplink_shouldFollowSubtreeMovedBelowRegisteredPlaceholder() {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:01", null),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:01"),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:04", "AA:BB:CC:DD:EE:03")));
+        MacAddress first = MacAddress.parse("AA:BB:CC:DD:EE:04");
+        MacAddress second = MacAddress.parse("AA:BB:CC:DD:EE:02");
+        assertThat(TopologyUtils.findCommonUplink(first, second, topologyIndex)).isNull();
+
+        // when
+        topologyIndex.add(createDevice(SWITCH, "AA:BB:CC:DD:EE:03", "AA:BB:CC:DD:EE:02"));
+        CommonUplink commonUplink = TopologyUtils.findCommonUplink(first, second, topologyIndex);
+
+        // then
+        assertThat(commonUplink.getMacAddress()).isEqualTo("AA:BB:CC:DD:EE:02");
+        assertThat(commonUplink.getFirstDistance()).isEqualTo(2);
+        assertThat(TopologyUtils.prepareUplinkPath(first, topologyIndex)).hasSize(4);
+    }
+
+    @Test
+    void findCommonUplink_shouldHandleChainOfMillionDevices() {
+        // given
+        DeviceTopologyIndex topologyIndex = createChain(1_000_000);
+        topologyIndex.add(1_000_000L, SWITCH, 123_456L);
+
+        // when
+        CommonUplink commonUplink = TopologyUtils.findCommonUplink(new MacAddress(999_999L),
+                new MacAddress(1_000_000L), topologyIndex);
+
+        // then
+        assertThat(commonUplink.getMacAddress()).isEqualTo(MacAddress.toString(123_456L));
+        assertThat(commonUplink.getFirstDistance()).isEqualTo(999_999 - 123_456);
+        assertThat(commonUplink.getSecondDistance()).isEqualTo(1);
+    }
+
+    @Test
+    void isBehind_shouldOnlyAcceptDevicesBelowUplink() {
+        // given
+        DeviceTopologyIndex topologyIndex = createGatewayWithThreeSwitches();
+        MacAddress gateway = MacAddress.parse("AA:BB:CC:DD:EE:01");
+        MacAddress firstSwitch = MacAddress.parse("AA:BB:CC:DD:EE:02");
+        MacAddress secondSwitch = MacAddress.parse("AA:BB:CC:DD:EE:03");
+        MacAddress linkedSwitch = MacAddress.parse("AA:BB:CC:DD:EE:05");
+
+        // when & then
+        assertTrue(TopologyUtils.isBehind(linkedSwitch, gateway, topologyIndex));
+        assertTrue(TopologyUtils.isBehind(linkedSwitch, firstSwitch, topologyIndex));
+        assertFalse(TopologyUtils.isBehind(linkedSwitch, secondSwitch, topologyIndex));
+        assertFalse(TopologyUtils.isBehind(gateway, linkedSwitch, topologyIndex));
+        assertFalse(TopologyUtils.isBehind(gateway, gateway, topologyIndex));
+    }
+
+    @Test
+    void isBehind_shouldMatchUplinkWalkWhileDevicesAreAdded() {
+        // given
+        SplittableRandom random = new SplittableRandom(7);
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        topologyIndex.add(0L, GATEWAY, MacAddress.NONE);
+        for (long macAddress = 1; macAddress < 3_000; macAddress++) {
+            // linked devices pile up below the first devices until their label gaps run out
+            long uplinkMacAddress = random.nextInt(4) == 0 ? macAddress - 1 : random.nextLong(Math.min(macAddress, 20));
+            topologyIndex.add(macAddress, SWITCH, uplinkMacAddress);
+
+            // when
+            long device = random.nextLong(macAddress + 1);
+            long uplink = random.nextLong(macAddress + 1);
+            boolean behind = TopologyUtils.isBehind(new MacAddress(device), new MacAddress(uplink), topologyIndex);
+
+            // then
+            assertEquals(device != uplink && uplinkPathOf(topologyIndex, device).contains(uplink), behind);
+        }
+    }
+
+    @Test
+    void prepareImpactReport_shouldCountAndListAffectedDevicesInTopologyOrder() {
+        // given
+        DeviceTopologyIndex topologyIndex = createGatewayWithThreeSwitches();
+        topologyIndex.add(createDevice(DeviceType.ACCESS_POINT, "AA:BB:CC:DD:EE:06", "AA:BB:CC:DD:EE:05"));
+
+        // when
+        ImpactReport gatewayReport = TopologyUtils.prepareImpactReport(MacAddress.parse("AA:BB:CC:DD:EE:01"),
+                topologyIndex, 3);
+        ImpactReport switchReport = TopologyUtils.prepareImpactReport(MacAddress.parse("AA:BB:CC:DD:EE:02"),
+                topologyIndex, 100);
+
+        // then
+        assertThat(gatewayReport.getAffectedDeviceCount()).isEqualTo(5);
+        assertThat(gatewayReport.getAffectedDevices()).extracting(DeviceEntry::getMacAddress)
+                .containsExactly("AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:05", "AA:BB:CC:DD:EE:06");
+        assertThat(switchReport.getAffectedDeviceCount()).isEqualTo(2);
+        assertThat(switchReport.getAffectedDevices()).extracting(DeviceEntry::getDeviceType)
+                .containsExactly(SWITCH, DeviceType.ACCESS_POINT);
+    }
+
+    @Test
+    void prepareImpactReport_shouldKeepCountingDevicesAddedBetweenReports() {
+        // given
+        DeviceTopologyIndex topologyIndex = createGatewayWithThreeSwitches();
+        MacAddress gateway = MacAddress.parse("AA:BB:CC:DD:EE:01");
+        ImpactReport before = TopologyUtils.prepareImpactReport(gateway, topologyIndex, 0);
+
+        // when
+        topologyIndex.add(createDevice(DeviceType.ACCESS_POINT, "AA:BB:CC:DD:EE:06", "AA:BB:CC:DD:EE:05"));
+        topologyIndex.add(createDevice(DeviceType.ACCESS_POINT, "AA:BB:CC:DD:EE:07", "AA:BB:CC:DD:EE:02"));
+        ImpactReport counted = TopologyUtils.prepareImpactReport(gateway, topologyIndex, 0);
+        ImpactReport listed = TopologyUtils.prepareImpactReport(gateway, topologyIndex, 100);
+
+        // then
+        assertThat(before.getAffectedDeviceCount()).isEqualTo(4);
+        assertThat(counted.getAffectedDeviceCount()).isEqualTo(6);
+        assertThat(counted.getAffectedDevices()).isEmpty();
+        assertThat(listed.getAffectedDevices()).extracting(DeviceEntry::getMacAddress).containsExactly(
+                "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:05", "AA:BB:CC:DD:EE:06", "AA:BB:CC:DD:EE:07",
+                "AA:BB:CC:DD:EE:03", "AA:BB:CC:DD:EE:04");
+    }
+
+    @Test
+    void prepareImpactReport_shouldFollowSubtreeMovedBelowRegisteredPlaceholder() {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:01", null),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:03", "AA:BB:CC:DD:EE:02"),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:04", "AA:BB:CC:DD:EE:03")));
+        MacAddress gateway = MacAddress.parse("AA:BB:CC:DD:EE:01");
+        assertThat(TopologyUtils.prepareImpactReport(gateway, topologyIndex, 10).getAffectedDeviceCount()).isZero();
+
+        // when
+        topologyIndex.add(createDevice(SWITCH, "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:01"));
+        ImpactReport impactReport = TopologyUtils.prepareImpactReport(gateway, topologyIndex, 10);
+
+        // then
+        assertThat(impactReport.getAffectedDeviceCount()).isEqualTo(3);
+        assertTrue(TopologyUtils.isBehind(MacAddress.parse("AA:BB:CC:DD:EE:04"), gateway, topologyIndex));
+    }
+
+    @Test
+    void prepareSubtreeAggregates_shouldCountDescendantsPerTypeAndDepthBelow() {
+        // given
+        DeviceTopologyIndex topologyIndex = createGatewayWithThreeSwitches();
+        topologyIndex.add(createDevice(DeviceType.ACCESS_POINT, "AA:BB:CC:DD:EE:06", "AA:BB:CC:DD:EE:05"));
+
+        // when
+        SubtreeAggregates subtreeAggregates = TopologyUtils.prepareSubtreeAggregates(
+                MacAddress.parse("AA:BB:CC:DD:EE:01"), topologyIndex);
+
+        // then
+        assertThat(subtreeAggregates.getDescendantCount()).isEqualTo(5);
+        assertThat(subtreeAggregates.getDescendantCountsByType())
+                .containsEntry(GATEWAY, 0)
+                .containsEntry(SWITCH, 4)
+                .containsEntry(DeviceType.ACCESS_POINT, 1);
+        assertThat(subtreeAggregates.getMaxDepthBelow()).isEqualTo(3);
+    }
+
+    @Test
+    void prepareLargestSubtrees_shouldReturnDevicesWithMostDescendantsFirst() {
+        // given
+        DeviceTopologyIndex topologyIndex = createGatewayWithThreeSwitches();
+        topologyIndex.add(createDevice(GATEWAY, "AA:BB:CC:DD:EE:10", null));
+        topologyIndex.add(createDevice(SWITCH, "AA:BB:CC:DD:EE:11", "AA:BB:CC:DD:EE:10"));
+        topologyIndex.add(createDevice(SWITCH, "AA:BB:CC:DD:EE:12", "AA:BB:CC:DD:EE:10"));
+
+        // when
+        List<SubtreeAggregates> largestSubtrees = TopologyUtils.prepareLargestSubtrees(topologyIndex, 2);
+
+        // then
+        assertThat(largestSubtrees).extracting(SubtreeAggregates::getMacAddress)
+                .containsExactly("AA:BB:CC:DD:EE:01", "AA:BB:CC:DD:EE:10");
+        assertThat(largestSubtrees).extracting(SubtreeAggregates::getDescendantCount).containsExactly(4, 2);
+    }
+
+    @Test
+    void measureDepth_shouldReturnLevelsBelowHighestRoot() {
+        // given
+        DeviceTopologyIndex topologyIndex = createGatewayWithThreeSwitches();
+        topologyIndex.add(createDevice(GATEWAY, "AA:BB:CC:DD:EE:10", null));
+        TopologyUtils.prepareAggregates(topologyIndex);
+
+        // when
+        int depth = TopologyUtils.measureDepth(topologyIndex);
+        topologyIndex.add(createDevice(SWITCH, "AA:BB:CC:DD:EE:11", "AA:BB:CC:DD:EE:12"));
+        topologyIndex.add(createDevice(SWITCH, "AA:BB:CC:DD:EE:13", "AA:BB:CC:DD:EE:11"));
+        topologyIndex.add(createDevice(SWITCH, "AA:BB:CC:DD:EE:14", "AA:BB:CC:DD:EE:13"));
+
+        // then
+        assertThat(depth).isEqualTo(2);
+        assertThat(TopologyUtils.measureDepth(topologyIndex)).isEqualTo(3);
+        assertThat(TopologyUtils.measureDepth(new DeviceTopologyIndex())).isZero();
+    }
+
+    @Test
+    void measureDepth_shouldNotRecomputeAggregatesAfterLoad() {
+        // given
+        DeviceTopologyIndex topologyIndex = DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:01", null),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:01")));
+
+        // when
+        int beforeAggregates = TopologyUtils.measureDepth(topologyIndex);
+        TopologyUtils.prepareAggregates(topologyIndex);
+        int afterAggregates = TopologyUtils.measureDepth(topologyIndex);
+
+        // then
+        assertThat(beforeAggregates).isEqualTo(-1);
+        assertThat(afterAggregates).isEqualTo(1);
+    }
+
+    private List<Long> uplinkPathOf(DeviceTopologyIndex topologyIndex, long macAddress) {
+        List<Long> uplinkPath = new ArrayList<>();
+        for (long current = macAddress; current != MacAddress.NONE;
+             current = topologyIndex.getUplinkMacAddress(current)) {
+            uplinkPath.add(current);
+        }
+        return uplinkPath;
+    }
+
+    private DeviceTopologyIndex createGatewayWithThreeSwitches() {
+        return DeviceTopologyIndex.of(List.of(
+                createDevice(GATEWAY, "AA:BB:CC:DD:EE:01", null),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:02", "AA:BB:CC:DD:EE:01"),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:03", "AA:BB:CC:DD:EE:01"),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:04", "AA:BB:CC:DD:EE:01"),
+                createDevice(SWITCH, "AA:BB:CC:DD:EE:05", "AA:BB:CC:DD:EE:02")));
+    }
+
+    private String write(ObjectMapper objectMapper, TopologyWriter topologyWriter) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            topologyWriter.write(generator);
+        }
+        return writer.toString();
+    }
+
+    private interface TopologyWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    private DeviceTopologyIndex createChain(int length) {
+        DeviceTopologyIndex topologyIndex = new DeviceTopologyIndex();
+        topologyIndex.add(0L, GATEWAY, MacAddress.NONE);
+        for (long macAddress = 1; macAddress < length; macAddress++) {
+            topologyIndex.add(macAddress, SWITCH, macAddress - 1);
+        }
+        return topologyIndex;
+    }
 }
@@ -67,4 +67,57 @@ public class MacAddressValidatorTest {
                 exception.getMessage()
         );
     }
+
+    @Test
+    void shouldThrowExceptionWhenMacHasWrongSeparator() {
+        DeviceInventoryException exception = assertThrows(DeviceInventoryException.class, () ->
+                MacAddressValidator.validateMacAddress("AA-BB-CC-DD-EE-FF")
+        );
+        assertEquals(
+                "MAC address must comply with XX:XX:XX:XX:XX:XX alphanumerical format.",
+                exception.getMessage()
+        );
+    }
+
+    @Test
+    void shouldThrowExceptionWhenMacIsTooLong() {
+        assertThrows(DeviceInventoryException.class, () ->
+                MacAddressValidator.validateMacAddress("AA:BB:CC:DD:EE:FF:")
+        );
+    }
+
+    @Test
+    void shouldParseMacAddressToNumber() {
+        assertEquals(0xAABBCCDDEEFFL, MacAddressValidator.parseMacAddress("AA:BB:CC:DD:EE:FF"));
+        assertEquals(0x0019E3A1B2C3L, MacAddressValidator.parseMacAddress("00:19:E3:A1:B2:C3"));
+    }
+
+    @Test
+    void shouldParseLowercaseAndDashSeparatedMacInLenientMode() {
+        assertEquals(0xAABBCCDDEEFFL, MacAddressValidator.parseMacAddress("aa:bb:cc:dd:ee:ff", true));
+        assertEquals(0xAABBCCDDEEFFL, MacAddressValidator.parseMacAddress("AA-bb-CC-dd-EE-ff", true));
+    }
+
+    @Test
+    void shouldParseCiscoDottedMacInLenientMode() {
+        assertEquals(0xAABBCCDDEEFFL, MacAddressValidator.parseMacAddress("aabb.ccdd.eeff", true));
+    }
+
+    @Test
+    void shouldThrowExceptionWhenLenientMacMixesSeparators() {
+        DeviceInventoryException exception = assertThrows(DeviceInventoryException.class, () ->
+                MacAddressValidator.parseMacAddress("AA-BB:CC-DD-EE-FF", true)
+        );
+        assertEquals(
+                "MAC address must comply with XX:XX:XX:XX:XX:XX, XX-XX-XX-XX-XX-XX or XXXX.XXXX.XXXX alphanumerical format.",
+                exception.getMessage()
+        );
+    }
+
+    @Test
+    void shouldThrowExceptionWhenLenientMacHasNonAsciiCharacters() {
+        assertThrows(DeviceInventoryException.class, () ->
+                MacAddressValidator.parseMacAddress("ąabb.ccdd.eeff", true)
+        );
+    }
 }